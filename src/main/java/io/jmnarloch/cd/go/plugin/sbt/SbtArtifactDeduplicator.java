@@ -0,0 +1,475 @@
+/**
+ * Copyright (c) 2015 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jmnarloch.cd.go.plugin.sbt;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deduplicates the build artifacts by replacing them with the hard links to the agent local content store. The
+ * store entries are named after the SHA-256 of their content.
+ *
+ * <p>Every deduplicated file is listed in the workspace manifest before it is linked, and is replaced with its private
+ * copy before the next build in the same workspace, whether the deduplication is still enabled or not, since SBT
+ * overwrites its outputs in place. The content of the existing store entry is verified before it is linked again, so
+ * that the entry modified in place in spite of that is not spread to the other workspaces. Removing the workspace
+ * removes only the links, the store entries that are no longer linked from any workspace are removed periodically.</p>
+ *
+ * <p>The deduplication requires the hard link count, so it is supported only on the Unix file systems.</p>
+ *
+ * @author Jakub Narloch
+ */
+final class SbtArtifactDeduplicator {
+
+    /**
+     * The logger instance used by this class.
+     */
+    private static final Logger logger = Logger.getLoggerFor(SbtArtifactDeduplicator.class);
+
+    /**
+     * The workspace manifest listing the deduplicated files.
+     */
+    private static final String MANIFEST = ".sbt-dedup";
+
+    /**
+     * The marker of the last store garbage collection.
+     */
+    private static final String GC_MARKER = ".gc";
+
+    /**
+     * The interval of the store garbage collection.
+     */
+    private static final long GC_INTERVAL = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * The minimal size of the deduplicated file.
+     */
+    private static final long MIN_SIZE = 64 * 1024;
+
+    /**
+     * The hashing buffer size.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The Unix file attribute view.
+     */
+    private static final String UNIX = "unix";
+
+    /**
+     * The hard link count attribute.
+     */
+    private static final String LINK_COUNT = UNIX + ":nlink";
+
+    /**
+     * The content store directory.
+     */
+    private final Path store;
+
+    /**
+     * The workspace directory.
+     */
+    private final Path workspace;
+
+    /**
+     * The patterns of the deduplicated files, relative to the workspace.
+     */
+    private final List<PathMatcher> patterns = new ArrayList<PathMatcher>();
+
+    /**
+     * Creates new instance of {@link SbtArtifactDeduplicator}.
+     *
+     * @param store     the content store directory
+     * @param workspace the workspace directory
+     * @param patterns  the glob patterns of the deduplicated files, relative to the workspace
+     */
+    SbtArtifactDeduplicator(Path store, Path workspace, List<String> patterns) {
+        this.store = store;
+        this.workspace = workspace;
+        for (String pattern : patterns) {
+            this.patterns.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+        }
+    }
+
+    /**
+     * Returns whether the deduplication is supported by the workspace file system.
+     *
+     * @param workspace the workspace directory
+     * @return true if the file system reports the hard link count
+     */
+    static boolean isSupported(Path workspace) {
+        return workspace.getFileSystem().supportedFileAttributeViews().contains(UNIX);
+    }
+
+    /**
+     * Replaces the files deduplicated by the previous build with their private writable copies, so that the build is
+     * free to overwrite them. The copies keep the modification time, so that they are not recompiled or repackaged.
+     * The files have to be restored even if the deduplication is no longer enabled.
+     *
+     * @param workspace the workspace directory
+     * @return the number of restored files
+     * @throws IOException if any error occurs
+     */
+    static int restore(Path workspace) throws IOException {
+        final Path manifest = workspace.resolve(MANIFEST);
+        if (!Files.isRegularFile(manifest)) {
+            return 0;
+        }
+
+        int restored = 0;
+        for (String entry : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            final Path file = workspace.resolve(entry);
+            if (!entry.isEmpty() && Files.isRegularFile(file) && isLinked(file)) {
+                final Path temp = tempFile(file);
+                Files.copy(file, temp, StandardCopyOption.COPY_ATTRIBUTES);
+                temp.toFile().setWritable(true);
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                restored++;
+            }
+        }
+        Files.delete(manifest);
+        return restored;
+    }
+
+    /**
+     * Deduplicates the matching workspace files, hashing them in parallel.
+     *
+     * @return the deduplication result
+     * @throws IOException          if any error occurs
+     * @throws InterruptedException if the build has been interrupted
+     */
+    Result deduplicate() throws IOException, InterruptedException {
+        final List<Path> files = findFiles();
+        final Result result = new Result();
+        if (files.isEmpty()) {
+            return result;
+        }
+
+        Files.createDirectories(store);
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            final List<Future<Long>> links = new ArrayList<Future<Long>>(files.size());
+            for (final Path file : files) {
+                links.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        return link(file);
+                    }
+                }));
+            }
+
+            for (int index = 0; index < files.size(); index++) {
+                final long saved = getSaved(files.get(index), links.get(index));
+                if (saved >= 0) {
+                    result.add(saved);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        collectGarbage();
+        return result;
+    }
+
+    /**
+     * Finds the workspace files matching any of the patterns.
+     *
+     * @return the matching files
+     * @throws IOException if any error occurs
+     */
+    private List<Path> findFiles() throws IOException {
+        final List<Path> files = new ArrayList<Path>();
+        Files.walkFileTree(workspace, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                if (attributes.isRegularFile() && attributes.size() >= MIN_SIZE && matches(file)) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    /**
+     * Returns whether the file matches any of the patterns.
+     *
+     * @param file the file
+     * @return true if the file matches
+     */
+    private boolean matches(Path file) {
+        final Path relative = workspace.relativize(file);
+        for (PathMatcher pattern : patterns) {
+            if (pattern.matches(relative)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Links the file with the content store, either by adding it to the store, or by replacing it with the link to
+     * the store entry of the same content. The store entries are read-only, so that the linked files can not be
+     * modified in place by mistake. The file is listed in the manifest before it is linked, so that it is
+     * restored even if the deduplication does not complete.
+     *
+     * @param file the workspace file
+     * @return the number of saved bytes, or -1 if the file could not be linked
+     * @throws IOException if any error occurs
+     */
+    private long link(Path file) throws IOException {
+        final long size = Files.size(file);
+        final String hash = hash(file);
+        final Path entry = store.resolve(hash.substring(0, 2)).resolve(hash);
+        Files.createDirectories(entry.getParent());
+        addToManifest(file);
+
+        try {
+            Files.createLink(entry, file);
+            entry.toFile().setWritable(false, false);
+            return 0;
+        } catch (FileAlreadyExistsException e) {
+            // the same content has already been stored
+        }
+
+        if (Files.isSameFile(entry, file)) {
+            return 0;
+        }
+        if (Files.size(entry) != size || !hash.equals(hash(entry))) {
+            // the entry has been modified in place, it is replaced so that it is no longer linked
+            replace(entry, file);
+            return 0;
+        }
+
+        final Path temp = tempFile(file);
+        try {
+            Files.createLink(temp, entry);
+        } catch (NoSuchFileException e) {
+            // the entry has just been removed by the garbage collection
+            return -1;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return size;
+    }
+
+    /**
+     * Replaces the store entry with the file.
+     *
+     * @param entry the store entry
+     * @param file  the workspace file
+     * @throws IOException if any error occurs
+     */
+    private void replace(Path entry, Path file) throws IOException {
+        logger.warn("The content store entry " + entry + " has been modified and is replaced");
+        final Path temp = tempFile(entry);
+        Files.createLink(temp, file);
+        temp.toFile().setWritable(false, false);
+        Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Lists the file in the workspace manifest.
+     *
+     * @param file the workspace file
+     * @throws IOException if any error occurs
+     */
+    private synchronized void addToManifest(Path file) throws IOException {
+        Files.write(workspace.resolve(MANIFEST),
+                Collections.singletonList(workspace.relativize(file).toString()), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Waits for the file to be linked.
+     *
+     * @param file   the workspace file
+     * @param result the link result
+     * @return the number of saved bytes, or -1 if the file could not be linked
+     * @throws InterruptedException if the build has been interrupted
+     */
+    private long getSaved(Path file, Future<Long> result) throws InterruptedException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            logger.warn("The file " + file + " could not be deduplicated", e.getCause());
+            return -1;
+        }
+    }
+
+    /**
+     * Removes the store entries that are no longer linked from any workspace. The collection runs at most once a
+     * day, and only on the file systems that report the hard link count.
+     *
+     * @throws IOException if any error occurs
+     */
+    private void collectGarbage() throws IOException {
+        final Path marker = store.resolve(GC_MARKER);
+        final long now = System.currentTimeMillis();
+        if (Files.exists(marker) && now - Files.getLastModifiedTime(marker).toMillis() < GC_INTERVAL) {
+            return;
+        }
+        if (!Files.exists(marker)) {
+            Files.createFile(marker);
+        }
+        Files.setLastModifiedTime(marker, FileTime.fromMillis(now));
+
+        try (DirectoryStream<Path> directories = Files.newDirectoryStream(store)) {
+            for (Path directory : directories) {
+                if (!Files.isDirectory(directory)) {
+                    continue;
+                }
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                    for (Path entry : entries) {
+                        if (((Number) Files.getAttribute(entry, LINK_COUNT)).intValue() == 1) {
+                            Files.deleteIfExists(entry);
+                        }
+                    }
+                }
+            }
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            logger.debug("The content store garbage collection is not supported: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns whether the file might be linked with the store.
+     *
+     * @param file the file
+     * @return false if the file is known to have single link
+     * @throws IOException if any error occurs
+     */
+    private static boolean isLinked(Path file) throws IOException {
+        try {
+            return ((Number) Files.getAttribute(file, LINK_COUNT)).intValue() > 1;
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Calculates the SHA-256 of the file content.
+     *
+     * @param file the file
+     * @return the hex encoded hash
+     * @throws IOException if any error occurs
+     */
+    private static String hash(Path file) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("The SHA-256 is not supported", e);
+        }
+
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream input = Files.newInputStream(file)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        final StringBuilder hash = new StringBuilder();
+        for (byte value : digest.digest()) {
+            hash.append(String.format("%02x", value));
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Creates the unique temporary file name next to the file.
+     *
+     * @param file the file
+     * @return the temporary file name
+     */
+    private static Path tempFile(Path file) {
+        return file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+    }
+
+    /**
+     * The deduplication result.
+     */
+    static final class Result {
+
+        /**
+         * The number of files linked with the store.
+         */
+        private int files;
+
+        /**
+         * The number of saved bytes.
+         */
+        private long saved;
+
+        /**
+         * Adds the linked file.
+         *
+         * @param saved the number of bytes saved by the file
+         */
+        private void add(long saved) {
+            this.files++;
+            this.saved += saved;
+        }
+
+        /**
+         * Retrieves the number of files linked with the store.
+         *
+         * @return the number of files
+         */
+        int getFiles() {
+            return files;
+        }
+
+        /**
+         * Retrieves the number of saved bytes.
+         *
+         * @return the number of saved bytes
+         */
+        long getSaved() {
+            return saved;
+        }
+    }
+}
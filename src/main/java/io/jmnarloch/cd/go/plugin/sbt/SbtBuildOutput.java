@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2015 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jmnarloch.cd.go.plugin.sbt;
+
+import com.thoughtworks.go.plugin.api.task.JobConsoleLogger;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The output of the whole build, creates the output listeners of every SBT process executed by the build.
+ *
+ * @author Jakub Narloch
+ */
+final class SbtBuildOutput {
+
+    /**
+     * The job console.
+     */
+    private final JobConsoleLogger console;
+
+    /**
+     * The number of the last lines printed to the console, or 0 if the whole output is printed.
+     */
+    private final int consoleTailSize;
+
+    /**
+     * The listeners shared by all of the processes.
+     */
+    private final List<SbtOutputListener> listeners = new ArrayList<SbtOutputListener>();
+
+    /**
+     * Creates new instance of {@link SbtBuildOutput}.
+     *
+     * @param console         the job console
+     * @param consoleTailSize the number of the last lines printed to the console, or 0 if the whole output is printed
+     */
+    SbtBuildOutput(JobConsoleLogger console, int consoleTailSize) {
+        this.console = console;
+        this.consoleTailSize = consoleTailSize;
+    }
+
+    /**
+     * Registers the listener shared by all of the processes.
+     *
+     * @param listener the output listener
+     * @return the build output
+     */
+    SbtBuildOutput withListener(SbtOutputListener listener) {
+        this.listeners.add(listener);
+        return this;
+    }
+
+    /**
+     * Creates the listeners of the single SBT process output.
+     *
+     * @return the output listeners
+     */
+    List<SbtOutputListener> forProcess() {
+        final List<SbtOutputListener> process = new ArrayList<SbtOutputListener>(listeners.size() + 1);
+        process.add(new SbtConsoleOutput(console, consoleTailSize));
+        process.addAll(listeners);
+        return process;
+    }
+
+    /**
+     * Starts reading the error output of single SBT process. When the whole output is printed to the console, the
+     * error output is passed to the console as is, so that it stays marked as the error output, SBT itself logs to the
+     * standard output. Otherwise the error output is read the same way as the standard output.
+     *
+     * @param error     the process error output
+     * @param stage     the stage name, or null for the tasks
+     * @param listeners the process output listeners
+     * @return the reading thread, or null if the error output is read by the console
+     */
+    Thread readErrorOf(InputStream error, String stage, List<SbtOutputListener> listeners) {
+        if (consoleTailSize == 0) {
+            console.readErrorOf(error);
+            return null;
+        }
+        return new SbtOutputReader(error, stage, listeners).start();
+    }
+}
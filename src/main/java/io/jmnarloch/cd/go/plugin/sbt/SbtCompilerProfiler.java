@@ -0,0 +1,354 @@
+/**
+ * Copyright (c) 2015 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jmnarloch.cd.go.plugin.sbt;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.thoughtworks.go.plugin.api.task.JobConsoleLogger;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Collects the Scala compiler phase timings printed by the compiler in the verbose mode, and breaks them down per
+ * subproject and compiler phase.
+ *
+ * <p>The subproject is recognized from the output directory of the last compilation started by the same SBT
+ * process, which is why the compilations are serialized while profiling.</p>
+ *
+ * @author Jakub Narloch
+ */
+final class SbtCompilerProfiler implements SbtOutputListener {
+
+    /**
+     * The number of the slowest phases reported.
+     */
+    private static final int SLOWEST_PHASES = 10;
+
+    /**
+     * The compilation start, for instance {@code Compiling 3 Scala sources to /project/core/target/scala-2.11/classes}.
+     */
+    private static final Pattern COMPILING = Pattern.compile("[Cc]ompiling (\\d+) .*?sources? to (.+?)[\\s.]*$");
+
+    /**
+     * The phase timing, for instance {@code [typer in 123ms]}.
+     */
+    private static final Pattern PHASE = Pattern.compile("\\[([\\w-]+) in (\\d+)ms\\]");
+
+    /**
+     * The total compilation time reported by some of the compiler versions.
+     */
+    private static final String TOTAL = "total";
+
+    /**
+     * The unknown subproject.
+     */
+    private static final String UNKNOWN = "unknown";
+
+    /**
+     * The subproject currently compiled by every stage.
+     */
+    private final Map<String, Project> compiling = new HashMap<String, Project>();
+
+    /**
+     * The profiled subprojects.
+     */
+    private final Map<String, Project> projects = new LinkedHashMap<String, Project>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onStart(String stage) {
+        // no action required
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void onLine(String stage, String line) {
+        if (line.indexOf(" in ") < 0 && line.indexOf("ompiling ") < 0) {
+            return;
+        }
+
+        final Matcher compiling = COMPILING.matcher(line);
+        if (compiling.find()) {
+            final Project project = getProject(getProjectName(compiling.group(2)));
+            project.sources += Integer.parseInt(compiling.group(1));
+            this.compiling.put(stage, project);
+            return;
+        }
+
+        final Matcher phase = PHASE.matcher(line);
+        if (phase.find() && !TOTAL.equals(phase.group(1))) {
+            Project project = this.compiling.get(stage);
+            if (project == null) {
+                project = getProject(UNKNOWN);
+            }
+            project.add(phase.group(1), Long.parseLong(phase.group(2)));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void onComplete(String stage) {
+        compiling.remove(stage);
+    }
+
+    /**
+     * Writes the profile as JSON report.
+     *
+     * @param path the report file
+     * @throws IOException if any error occurs
+     */
+    synchronized void write(Path path) throws IOException {
+        final List<Project> sorted = getProjects();
+        final List<Map<String, Object>> projects = new ArrayList<Map<String, Object>>();
+        for (Project project : sorted) {
+            final Map<String, Object> entry = new LinkedHashMap<String, Object>();
+            entry.put("name", project.name);
+            entry.put("sources", project.sources);
+            entry.put("totalMs", project.total);
+            entry.put("phases", sortByTime(project.phases));
+            projects.add(entry);
+        }
+
+        final List<Map<String, Object>> slowest = new ArrayList<Map<String, Object>>();
+        for (Phase phase : getSlowestPhases()) {
+            final Map<String, Object> entry = new LinkedHashMap<String, Object>();
+            entry.put("project", phase.project);
+            entry.put("phase", phase.name);
+            entry.put("ms", phase.time);
+            slowest.add(entry);
+        }
+
+        final Map<String, Object> report = new LinkedHashMap<String, Object>();
+        report.put("projects", projects);
+        report.put("slowestPhases", slowest);
+
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            gson.toJson(report, writer);
+        }
+    }
+
+    /**
+     * Prints the slowest compiler phases to the job console.
+     *
+     * @param console the job console
+     */
+    synchronized void print(JobConsoleLogger console) {
+        final List<Phase> slowest = getSlowestPhases();
+        if (slowest.isEmpty()) {
+            console.printLine("No compiler phase timings have been found in the SBT output");
+            return;
+        }
+        console.printLine("The slowest compiler phases:");
+        for (Phase phase : slowest) {
+            console.printLine(String.format("  %s / %s: %d ms", phase.project, phase.name, phase.time));
+        }
+    }
+
+    /**
+     * Retrieves the subprojects sorted by the total compilation time.
+     *
+     * @return the subprojects
+     */
+    private List<Project> getProjects() {
+        final List<Project> sorted = new ArrayList<Project>(projects.values());
+        Collections.sort(sorted, new Comparator<Project>() {
+            @Override
+            public int compare(Project left, Project right) {
+                return Long.compare(right.total, left.total);
+            }
+        });
+        return sorted;
+    }
+
+    /**
+     * Retrieves the slowest phases across all of the subprojects.
+     *
+     * @return the slowest phases
+     */
+    private List<Phase> getSlowestPhases() {
+        final List<Phase> phases = new ArrayList<Phase>();
+        for (Project project : projects.values()) {
+            for (Map.Entry<String, Long> phase : project.phases.entrySet()) {
+                phases.add(new Phase(project.name, phase.getKey(), phase.getValue()));
+            }
+        }
+        Collections.sort(phases, new Comparator<Phase>() {
+            @Override
+            public int compare(Phase left, Phase right) {
+                return Long.compare(right.time, left.time);
+            }
+        });
+        return phases.size() > SLOWEST_PHASES ? phases.subList(0, SLOWEST_PHASES) : phases;
+    }
+
+    /**
+     * Sorts the phase timings from the slowest one.
+     *
+     * @param phases the phase timings
+     * @return the sorted phase timings
+     */
+    private static Map<String, Long> sortByTime(Map<String, Long> phases) {
+        final List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(phases.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> left, Map.Entry<String, Long> right) {
+                return Long.compare(right.getValue(), left.getValue());
+            }
+        });
+        final Map<String, Long> sorted = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, Long> entry : entries) {
+            sorted.put(entry.getKey(), entry.getValue());
+        }
+        return sorted;
+    }
+
+    /**
+     * Retrieves the profiled subproject, creating it if needed.
+     *
+     * @param name the subproject name
+     * @return the subproject
+     */
+    private Project getProject(String name) {
+        Project project = projects.get(name);
+        if (project == null) {
+            project = new Project(name);
+            projects.put(name, project);
+        }
+        return project;
+    }
+
+    /**
+     * Retrieves the subproject name from the compilation output directory, the directory containing the
+     * {@code target} directory is considered the subproject.
+     *
+     * @param output the compilation output directory
+     * @return the subproject name
+     */
+    private static String getProjectName(String output) {
+        final String[] segments = output.replace('\\', '/').split("/");
+        for (int index = segments.length - 1; index > 0; index--) {
+            if ("target".equals(segments[index])) {
+                final String name = segments[index - 1];
+                return segments[segments.length - 1].startsWith("test-") ? name + " / Test" : name;
+            }
+        }
+        return output;
+    }
+
+    /**
+     * The subproject compiler profile.
+     */
+    private static final class Project {
+
+        /**
+         * The subproject name.
+         */
+        private final String name;
+
+        /**
+         * The phase timings in milliseconds.
+         */
+        private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+
+        /**
+         * The number of compiled sources.
+         */
+        private int sources;
+
+        /**
+         * The total time in milliseconds.
+         */
+        private long total;
+
+        /**
+         * Creates new instance of {@link Project}.
+         *
+         * @param name the subproject name
+         */
+        private Project(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Adds the phase timing.
+         *
+         * @param phase the phase name
+         * @param time  the phase time in milliseconds
+         */
+        private void add(String phase, long time) {
+            final Long current = phases.get(phase);
+            phases.put(phase, current == null ? time : current + time);
+            total += time;
+        }
+    }
+
+    /**
+     * The timing of single phase of the subproject.
+     */
+    private static final class Phase {
+
+        /**
+         * The subproject name.
+         */
+        private final String project;
+
+        /**
+         * The phase name.
+         */
+        private final String name;
+
+        /**
+         * The phase time in milliseconds.
+         */
+        private final long time;
+
+        /**
+         * Creates new instance of {@link Phase}.
+         *
+         * @param project the subproject name
+         * @param name    the phase name
+         * @param time    the phase time in milliseconds
+         */
+        private Phase(String project, String name, long time) {
+            this.project = project;
+            this.name = name;
+            this.time = time;
+        }
+    }
+}
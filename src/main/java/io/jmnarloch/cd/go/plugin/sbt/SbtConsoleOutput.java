@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2015 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jmnarloch.cd.go.plugin.sbt;
+
+import com.thoughtworks.go.plugin.api.task.JobConsoleLogger;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Prints the SBT output to the job console. In the concise mode only the warnings and errors are printed as they
+ * appear, followed by the tail of the remaining output once the process has completed.
+ *
+ * @author Jakub Narloch
+ */
+class SbtConsoleOutput implements SbtOutputListener {
+
+    /**
+     * The job console.
+     */
+    private final JobConsoleLogger console;
+
+    /**
+     * The number of the last lines printed in the concise mode, or 0 if the whole output is printed.
+     */
+    private final int tailSize;
+
+    /**
+     * The last output lines, that have not been printed yet.
+     */
+    private final Deque<String> tail = new ArrayDeque<String>();
+
+    /**
+     * Creates new instance of {@link SbtConsoleOutput}.
+     *
+     * @param console  the job console
+     * @param tailSize the number of the last lines to print, or 0 if the whole output is printed
+     */
+    SbtConsoleOutput(JobConsoleLogger console, int tailSize) {
+        this.console = console;
+        this.tailSize = tailSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onStart(String stage) {
+        // no action required
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void onLine(String stage, String line) {
+        final String output = stage == null ? line : "[" + stage + "] " + line;
+        if (tailSize == 0 || SbtLogLevel.of(line).isProblem()) {
+            console.printLine(output);
+        } else {
+            if (tail.size() == tailSize) {
+                tail.removeFirst();
+            }
+            tail.addLast(output);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void onComplete(String stage) {
+        if (tail.isEmpty()) {
+            return;
+        }
+        console.printLine(String.format("Last %d lines of the %s output:", tail.size(),
+                stage == null ? "tasks" : stage + " stage"));
+        while (!tail.isEmpty()) {
+            console.printLine(tail.removeFirst());
+        }
+    }
+}
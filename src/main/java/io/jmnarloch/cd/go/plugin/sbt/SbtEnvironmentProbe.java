@@ -0,0 +1,490 @@
+/**
+ * Copyright (c) 2015 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jmnarloch.cd.go.plugin.sbt;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The pre-flight check of the agent environment, verifies that the SBT executable and the JDK are available before
+ * the SBT process is started. The probe does not spawn any process, and its results are cached per agent.
+ *
+ * @author Jakub Narloch
+ */
+final class SbtEnvironmentProbe {
+
+    /**
+     * The time for which the probe results are cached.
+     */
+    private static final long TTL = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * The cached probe results.
+     */
+    private static final ConcurrentMap<String, Result> CACHE = new ConcurrentHashMap<String, Result>();
+
+    /**
+     * The JAVA_HOME environment variable.
+     */
+    private static final String JAVA_HOME = "JAVA_HOME";
+
+    /**
+     * The PATH environment variable.
+     */
+    private static final String PATH = "PATH";
+
+    /**
+     * The user home system property.
+     */
+    private static final String USER_HOME = "user.home";
+
+    /**
+     * The OS name.
+     */
+    private static final String OS_NAME = "os.name";
+
+    /**
+     * The JDK release file.
+     */
+    private static final String RELEASE = "release";
+
+    /**
+     * The JDK version property of the release file.
+     */
+    private static final String JAVA_VERSION = "JAVA_VERSION";
+
+    /**
+     * The SBT build properties file, relative to the working directory.
+     */
+    private static final String BUILD_PROPERTIES = "project/build.properties";
+
+    /**
+     * The SBT version property of the build properties file.
+     */
+    private static final String SBT_VERSION = "sbt.version";
+
+    /**
+     * The first SBT 1.x version.
+     */
+    private static final String SBT_1 = "1.0.0";
+
+    /**
+     * The minimal JDK version required by SBT 1.x.
+     */
+    private static final int SBT_1_MIN_JAVA_VERSION = 8;
+
+    /**
+     * The minimal SBT versions able to run on the JDK versions, the newer JDKs are not supported by the older SBT
+     * releases.
+     */
+    private static final SortedMap<Integer, String> MIN_SBT_VERSIONS = new TreeMap<Integer, String>();
+
+    static {
+        MIN_SBT_VERSIONS.put(9, "0.13.17");
+        MIN_SBT_VERSIONS.put(11, "1.1.0");
+        MIN_SBT_VERSIONS.put(17, "1.5.5");
+        MIN_SBT_VERSIONS.put(21, "1.9.0");
+    }
+
+    /**
+     * The build environment.
+     */
+    private final Map<String, String> environment;
+
+    /**
+     * Creates new instance of {@link SbtEnvironmentProbe}.
+     *
+     * @param environment the build environment
+     */
+    private SbtEnvironmentProbe(Map<String, String> environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * Probes the environment, reusing the cached result if it has not yet expired. Only the results without any
+     * errors or warnings are cached, so that the fixed agent setup is picked up by the very next build. If the SBT
+     * version has not been requested, the version of the project build properties is verified instead.
+     *
+     * @param environment      the build environment
+     * @param workingDirectory the build working directory
+     * @param executable       the SBT executable, a bare name if it has not been found on PATH
+     * @param requestedVersion the requested SBT version, might be null
+     * @return the probe result
+     */
+    static Result probe(Map<String, String> environment, String workingDirectory, String executable,
+                        String requestedVersion) {
+        final SbtEnvironmentProbe probe = new SbtEnvironmentProbe(environment);
+        final Path sbt = resolveExecutable(Paths.get(workingDirectory), Paths.get(executable));
+        final String sbtVersion = StringUtils.isBlank(requestedVersion)
+                ? getProjectSbtVersion(Paths.get(workingDirectory)) : requestedVersion;
+        final String key = StringUtils.join(new Object[]{sbt, sbtVersion,
+                probe.getEnvironmentVariable(JAVA_HOME), probe.getEnvironmentVariable(PATH)}, File.pathSeparator);
+
+        final long now = System.currentTimeMillis();
+        final Result cached = CACHE.get(key);
+        if (cached != null && cached.expires > now) {
+            return cached;
+        }
+
+        final Result result = probe.probe(sbt, sbtVersion, now + TTL);
+        if (result.getErrors().isEmpty() && result.getWarnings().isEmpty()) {
+            CACHE.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Resolves the executable the way the process is started, a bare name is looked up on PATH only, while any other
+     * relative path is resolved against the working directory.
+     *
+     * @param workingDirectory the build working directory
+     * @param executable       the SBT executable
+     * @return the resolved executable, or the bare name
+     */
+    private static Path resolveExecutable(Path workingDirectory, Path executable) {
+        if (!executable.isAbsolute() && executable.getNameCount() == 1) {
+            return executable;
+        }
+        return workingDirectory.resolve(executable).normalize();
+    }
+
+    /**
+     * Probes the environment.
+     *
+     * @param sbt        the SBT executable
+     * @param sbtVersion the requested or the project SBT version, might be null
+     * @param expires    the result expiration time
+     * @return the probe result
+     */
+    private Result probe(Path sbt, String sbtVersion, long expires) {
+        final List<String> errors = new ArrayList<String>();
+        final List<String> warnings = new ArrayList<String>();
+
+        if (sbt.getParent() == null) {
+            errors.add(String.format("The SBT executable %s could not be found on PATH, verify the SBT home or "
+                    + "SBT_HOME", sbt));
+        } else if (!Files.isRegularFile(sbt)) {
+            errors.add(String.format("The SBT executable %s could not be found, verify the SBT home or SBT_HOME",
+                    sbt));
+        } else if (!isWindows() && !Files.isExecutable(sbt)) {
+            errors.add(String.format("The SBT executable %s is not executable", sbt));
+        }
+
+        final Path java = getJavaExecutable();
+        if (java == null) {
+            errors.add("The java executable could not be found, verify JAVA_HOME or PATH");
+        } else {
+            final String error = verifyJavaVersion(sbtVersion, getJavaVersion(java));
+            if (error != null) {
+                errors.add(error);
+            }
+        }
+
+        if (!StringUtils.isBlank(sbtVersion) && !isBooted(sbtVersion)) {
+            warnings.add(String.format("SBT %s is not present in the boot directory and will be downloaded",
+                    sbtVersion));
+        }
+        return new Result(errors, warnings, expires);
+    }
+
+    /**
+     * Verifies that the SBT version is able to run on the JDK version.
+     *
+     * @param sbtVersion  the SBT version, might be null
+     * @param javaVersion the major JDK version, or -1 if unknown
+     * @return the error, or null if the versions are compatible or could not be determined
+     */
+    private static String verifyJavaVersion(String sbtVersion, int javaVersion) {
+        final int[] version = parseSbtVersion(sbtVersion);
+        if (version == null || javaVersion <= 0) {
+            return null;
+        }
+        if (compare(version, parseSbtVersion(SBT_1)) >= 0 && javaVersion < SBT_1_MIN_JAVA_VERSION) {
+            return String.format("SBT %s requires at least Java %d, found Java %d",
+                    sbtVersion, SBT_1_MIN_JAVA_VERSION, javaVersion);
+        }
+        final SortedMap<Integer, String> supported = MIN_SBT_VERSIONS.headMap(javaVersion + 1);
+        if (!supported.isEmpty() && compare(version, parseSbtVersion(supported.get(supported.lastKey()))) < 0) {
+            return String.format("SBT %s does not support Java %d, use at least SBT %s or an older JDK",
+                    sbtVersion, javaVersion, supported.get(supported.lastKey()));
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the SBT version of the project from its build properties.
+     *
+     * @param workingDirectory the build working directory
+     * @return the SBT version, or null if it has not been specified
+     */
+    private static String getProjectSbtVersion(Path workingDirectory) {
+        final Path buildProperties = workingDirectory.resolve(BUILD_PROPERTIES);
+        if (!Files.isRegularFile(buildProperties)) {
+            return null;
+        }
+        final Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(buildProperties)) {
+            properties.load(input);
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+        return StringUtils.trimToNull(properties.getProperty(SBT_VERSION));
+    }
+
+    /**
+     * Parses the major, minor and patch numbers of the SBT version.
+     *
+     * @param sbtVersion the SBT version
+     * @return the version numbers, or null if the version could not be parsed
+     */
+    private static int[] parseSbtVersion(String sbtVersion) {
+        if (StringUtils.isBlank(sbtVersion)) {
+            return null;
+        }
+        final String[] parts = sbtVersion.trim().split("[.-]");
+        if (parts.length < 3) {
+            return null;
+        }
+        final int[] version = new int[3];
+        for (int index = 0; index < version.length; index++) {
+            if (!StringUtils.isNumeric(parts[index])) {
+                return null;
+            }
+            version[index] = Integer.parseInt(parts[index]);
+        }
+        return version;
+    }
+
+    /**
+     * Compares the parsed SBT versions.
+     *
+     * @param version the version
+     * @param other   the other version
+     * @return negative, zero or positive number if the version is lower, equal or greater than the other one
+     */
+    private static int compare(int[] version, int[] other) {
+        for (int index = 0; index < version.length; index++) {
+            if (version[index] != other[index]) {
+                return version[index] < other[index] ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Resolves the java executable either from JAVA_HOME or the system path.
+     *
+     * @return the java executable, or null if it could not be found
+     */
+    private Path getJavaExecutable() {
+        final String command = isWindows() ? "java.exe" : "java";
+
+        final String javaHome = getEnvironmentVariable(JAVA_HOME);
+        if (!StringUtils.isBlank(javaHome)) {
+            final Path java = Paths.get(javaHome, "bin", command);
+            return Files.isRegularFile(java) ? java : null;
+        }
+
+        final String systemPath = getEnvironmentVariable(PATH);
+        if (StringUtils.isBlank(systemPath)) {
+            return null;
+        }
+        for (String path : systemPath.split(File.pathSeparator)) {
+            final Path java = Paths.get(path, command);
+            if (Files.isRegularFile(java)) {
+                return java;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the major JDK version from the release file of the JDK installation.
+     *
+     * @param java the java executable
+     * @return the major JDK version, or -1 if it could not be determined
+     */
+    private int getJavaVersion(Path java) {
+        try {
+            Path home = java.toRealPath().getParent().getParent();
+            for (int depth = 0; home != null && depth < 2; depth++, home = home.getParent()) {
+                final Path release = home.resolve(RELEASE);
+                if (Files.isRegularFile(release)) {
+                    return parseJavaVersion(release);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // the version is not verified if the JDK layout is not recognized
+        }
+        return -1;
+    }
+
+    /**
+     * Parses the major JDK version from the release file.
+     *
+     * @param release the release file
+     * @return the major JDK version, or -1 if it could not be determined
+     * @throws IOException if any error occurs
+     */
+    private static int parseJavaVersion(Path release) throws IOException {
+        final Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(release)) {
+            properties.load(input);
+        }
+        final String version = StringUtils.strip(properties.getProperty(JAVA_VERSION), "\"");
+        if (StringUtils.isBlank(version)) {
+            return -1;
+        }
+        final String[] parts = version.split("[._\\-+]");
+        final String major = "1".equals(parts[0]) && parts.length > 1 ? parts[1] : parts[0];
+        return StringUtils.isNumeric(major) ? Integer.parseInt(major) : -1;
+    }
+
+    /**
+     * Returns whether the requested SBT version is already present in the SBT boot directory.
+     *
+     * @param sbtVersion the SBT version
+     * @return true if the SBT version has already been downloaded
+     */
+    private boolean isBooted(String sbtVersion) {
+        final String userHome = getSystemProperty(USER_HOME);
+        if (StringUtils.isBlank(userHome)) {
+            return true;
+        }
+        final Path boot = Paths.get(userHome, ".sbt", "boot");
+        if (!Files.isDirectory(boot)) {
+            return false;
+        }
+        try (DirectoryStream<Path> scalaVersions = Files.newDirectoryStream(boot, "scala-*")) {
+            for (Path scala : scalaVersions) {
+                if (Files.isDirectory(scala.resolve(Paths.get("org.scala-sbt", "sbt", sbtVersion)))) {
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether current OS family is Windows.
+     *
+     * @return true if current task is executed on Windows
+     */
+    private boolean isWindows() {
+        final String os = getSystemProperty(OS_NAME);
+        return !StringUtils.isBlank(os) && os.toLowerCase().contains("win");
+    }
+
+    /**
+     * Retrieves the system property.
+     *
+     * @param property the property name
+     * @return the system property
+     */
+    private String getSystemProperty(String property) {
+        return environment.containsKey(property) ? environment.get(property) : System.getProperty(property);
+    }
+
+    /**
+     * Retrieves the environment variable.
+     *
+     * @param property the property name
+     * @return the environment variable
+     */
+    private String getEnvironmentVariable(String property) {
+        return environment.containsKey(property) ? environment.get(property) : System.getenv(property);
+    }
+
+    /**
+     * The probe result.
+     */
+    static final class Result {
+
+        /**
+         * The errors that prevent the build from being executed.
+         */
+        private final List<String> errors;
+
+        /**
+         * The warnings.
+         */
+        private final List<String> warnings;
+
+        /**
+         * The result expiration time.
+         */
+        private final long expires;
+
+        /**
+         * Creates new instance of {@link Result}.
+         *
+         * @param errors   the errors
+         * @param warnings the warnings
+         * @param expires  the expiration time
+         */
+        private Result(List<String> errors, List<String> warnings, long expires) {
+            this.errors = Collections.unmodifiableList(errors);
+            this.warnings = Collections.unmodifiableList(warnings);
+            this.expires = expires;
+        }
+
+        /**
+         * Returns whether the environment is able to execute the build.
+         *
+         * @return true if no errors have been found
+         */
+        boolean isValid() {
+            return errors.isEmpty();
+        }
+
+        /**
+         * Retrieves the errors.
+         *
+         * @return the errors
+         */
+        List<String> getErrors() {
+            return errors;
+        }
+
+        /**
+         * Retrieves the warnings.
+         *
+         * @return the warnings
+         */
+        List<String> getWarnings() {
+            return warnings;
+        }
+    }
+}
@@ -0,0 +1,487 @@
+/**
+ * Copyright (c) 2015 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jmnarloch.cd.go.plugin.sbt;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Turns the SBT output into the stream of the build events written as newline delimited JSON. The events are
+ * recognized from the SBT log lines: the task boundaries, the compilation problems, the test results and the
+ * dependency resolution progress. Every event is flushed once written, so that the stream can be consumed while the
+ * build is running.
+ *
+ * <p>The task names are assigned from the configured tasks, including the commands passed in the additional options,
+ * in order of their completion, since SBT reports only the end of every executed command. The first task of every
+ * stage starts together with its process.</p>
+ *
+ * @author Jakub Narloch
+ */
+final class SbtEventWriter implements SbtOutputListener, Closeable {
+
+    /**
+     * The logger instance used by this class.
+     */
+    private static final Logger logger = Logger.getLoggerFor(SbtEventWriter.class);
+
+    /**
+     * The command end, for instance {@code [success] Total time: 3 s, completed ...}.
+     */
+    private static final Pattern TASK_FINISHED = Pattern.compile("^\\[(success|error)\\] Total time: (\\d+) s");
+
+    /**
+     * The compilation problem, for instance {@code [error] /project/Main.scala:12:5: not found: value x}.
+     */
+    private static final Pattern PROBLEM =
+            Pattern.compile("^\\[(error|warn)\\] (.+?\\.(?:scala|java)):(\\d+):(?:(\\d+):)? (.*)$");
+
+    /**
+     * The ScalaTest test, for instance {@code [info] - should add numbers *** FAILED *** (12 milliseconds)}. The test
+     * name is followed by the optional status and duration, the test without any status has passed.
+     */
+    private static final Pattern TEST = Pattern.compile("^\\[info\\]\\s+- (.+?)"
+            + "(?: (\\*\\*\\* FAILED \\*\\*\\*|!!! IGNORED !!!|!!! CANCELED !!!|\\(pending\\)))?"
+            + "(?: \\((?:\\d+ \\w+(?:, )?)+\\))?$");
+
+    /**
+     * The statuses of the ScalaTest tests mapped by their markers.
+     */
+    private static final Map<String, String> TEST_STATUSES = new HashMap<String, String>();
+
+    static {
+        TEST_STATUSES.put("*** FAILED ***", "failed");
+        TEST_STATUSES.put("!!! IGNORED !!!", "ignored");
+        TEST_STATUSES.put("!!! CANCELED !!!", "canceled");
+        TEST_STATUSES.put("(pending)", "pending");
+    }
+
+    /**
+     * The test summary, for instance {@code [info] Passed: Total 3, Failed 0, Errors 0, Passed 3}.
+     */
+    private static final Pattern TEST_SUMMARY = Pattern.compile(
+            "^\\[(?:info|error)\\] (?:Passed|Failed): Total (\\d+), Failed (\\d+), Errors (\\d+), Passed (\\d+)");
+
+    /**
+     * The dependency resolution, for instance {@code [info] Resolving org.scala-lang:scala-library:2.11.7 ...}.
+     */
+    private static final Pattern RESOLVING = Pattern.compile("^\\[info\\] Resolving (\\S+)");
+
+    /**
+     * The project update start, for instance {@code [info] Updating {file:/project/}root...}.
+     */
+    private static final Pattern UPDATING = Pattern.compile("^\\[info\\] Updating (.+?)(?:\\.\\.\\.)?$");
+
+    /**
+     * The project update end.
+     */
+    private static final String UPDATED = "[info] Done updating.";
+
+    /**
+     * The event file.
+     */
+    private final Path path;
+
+    /**
+     * The event output.
+     */
+    private final Writer output;
+
+    /**
+     * The configured tasks of every stage.
+     */
+    private final Map<String, List<String>> tasksByStage;
+
+    /**
+     * The progress of every stage.
+     */
+    private final Map<String, Progress> progress = new HashMap<String, Progress>();
+
+    /**
+     * The event buffer reused by all of the events.
+     */
+    private final StringBuilder event = new StringBuilder(256);
+
+    /**
+     * Whether writing the events has failed.
+     */
+    private boolean failed;
+
+    /**
+     * Creates new instance of {@link SbtEventWriter}.
+     *
+     * @param path         the event file
+     * @param output       the event output
+     * @param tasksByStage the configured tasks of every stage
+     */
+    private SbtEventWriter(Path path, Writer output, Map<String, List<String>> tasksByStage) {
+        this.path = path;
+        this.output = output;
+        this.tasksByStage = tasksByStage;
+    }
+
+    /**
+     * Opens the event file for writing.
+     *
+     * @param path         the event file
+     * @param tasksByStage the configured tasks of every stage, the tasks executed before the stages are mapped by null
+     * @return the event writer
+     * @throws IOException if any error occurs
+     */
+    static SbtEventWriter open(Path path, Map<String, List<String>> tasksByStage) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        return new SbtEventWriter(path, Files.newBufferedWriter(path, StandardCharsets.UTF_8), tasksByStage);
+    }
+
+    /**
+     * Retrieves the event file.
+     *
+     * @return the event file
+     */
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void onStart(String stage) {
+        if (failed) {
+            return;
+        }
+        try {
+            startProgress(stage);
+        } catch (IOException e) {
+            failed = true;
+            logger.error("The build events could not be written into " + path, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void onLine(String stage, String line) {
+        if (failed) {
+            return;
+        }
+        try {
+            final Progress progress = getProgress(stage);
+            final String text = SbtLogLevel.stripColors(line);
+            final SbtLogLevel level = SbtLogLevel.of(text);
+            if (level == SbtLogLevel.NONE) {
+                return;
+            }
+
+            Matcher matcher;
+            if (level == SbtLogLevel.INFO) {
+                if ((matcher = TEST.matcher(text)).find()) {
+                    test(stage, matcher.group(1),
+                            matcher.group(2) == null ? "passed" : TEST_STATUSES.get(matcher.group(2)));
+                } else if (text.startsWith("[info] Resolving ")) {
+                    matcher = RESOLVING.matcher(text);
+                    if (matcher.find()) {
+                        start(stage, "resolving").field("module", matcher.group(1)).write();
+                    }
+                } else if (text.startsWith(UPDATED)) {
+                    start(stage, "updated").write();
+                } else if (text.startsWith("[info] Updating ")) {
+                    matcher = UPDATING.matcher(text);
+                    if (matcher.find()) {
+                        start(stage, "updating").field("project", matcher.group(1)).write();
+                    }
+                } else if (text.startsWith("[info] Passed: ")) {
+                    matcher = TEST_SUMMARY.matcher(text);
+                    if (matcher.find()) {
+                        testSummary(stage, matcher);
+                    }
+                }
+            } else if (level.isProblem() || level == SbtLogLevel.SUCCESS) {
+                if ((matcher = TASK_FINISHED.matcher(text)).find()) {
+                    taskFinished(stage, progress, "success".equals(matcher.group(1)),
+                            Long.parseLong(matcher.group(2)));
+                } else if ((matcher = PROBLEM.matcher(text)).find()) {
+                    problem(stage, matcher);
+                } else if ((matcher = TEST_SUMMARY.matcher(text)).find()) {
+                    testSummary(stage, matcher);
+                }
+            }
+        } catch (IOException e) {
+            failed = true;
+            logger.error("The build events could not be written into " + path, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void onComplete(String stage) {
+        progress.remove(stage);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        output.close();
+    }
+
+    /**
+     * Retrieves the progress of the stage, starting it if the start of the stage has not been notified.
+     *
+     * @param stage the stage name
+     * @return the stage progress
+     * @throws IOException if any error occurs
+     */
+    private Progress getProgress(String stage) throws IOException {
+        final Progress current = progress.get(stage);
+        return current != null ? current : startProgress(stage);
+    }
+
+    /**
+     * Starts the progress of the stage, emitting the start of its first task.
+     *
+     * @param stage the stage name
+     * @return the stage progress
+     * @throws IOException if any error occurs
+     */
+    private Progress startProgress(String stage) throws IOException {
+        final Progress current = new Progress();
+        progress.put(stage, current);
+        taskStarted(stage, current);
+        return current;
+    }
+
+    /**
+     * Writes the task start event.
+     *
+     * @param stage    the stage name
+     * @param progress the stage progress
+     * @throws IOException if any error occurs
+     */
+    private void taskStarted(String stage, Progress progress) throws IOException {
+        progress.started = System.currentTimeMillis();
+        start(stage, "taskStarted").field("task", getTask(stage, progress.task)).write();
+    }
+
+    /**
+     * Writes the task end event and the start event of the next task.
+     *
+     * @param stage    the stage name
+     * @param progress the stage progress
+     * @param success  whether the task succeeded
+     * @param reported the task time in seconds reported by SBT
+     * @throws IOException if any error occurs
+     */
+    private void taskFinished(String stage, Progress progress, boolean success, long reported) throws IOException {
+        start(stage, "taskFinished")
+                .field("task", getTask(stage, progress.task))
+                .field("success", success)
+                .field("durationMs", System.currentTimeMillis() - progress.started)
+                .field("reportedSeconds", reported)
+                .write();
+
+        progress.task++;
+        if (success && progress.task < getTasks(stage).size()) {
+            taskStarted(stage, progress);
+        }
+    }
+
+    /**
+     * Writes the compilation problem event.
+     *
+     * @param stage   the stage name
+     * @param matcher the matched problem
+     * @throws IOException if any error occurs
+     */
+    private void problem(String stage, Matcher matcher) throws IOException {
+        start(stage, "problem")
+                .field("severity", matcher.group(1))
+                .field("file", matcher.group(2))
+                .field("line", Long.parseLong(matcher.group(3)));
+        if (matcher.group(4) != null) {
+            field("column", Long.parseLong(matcher.group(4)));
+        }
+        field("message", matcher.group(5)).write();
+    }
+
+    /**
+     * Writes the test event.
+     *
+     * @param stage  the stage name
+     * @param test   the test name
+     * @param status the test status
+     * @throws IOException if any error occurs
+     */
+    private void test(String stage, String test, String status) throws IOException {
+        start(stage, "test").field("test", test).field("status", status).write();
+    }
+
+    /**
+     * Writes the test summary event.
+     *
+     * @param stage   the stage name
+     * @param matcher the matched summary
+     * @throws IOException if any error occurs
+     */
+    private void testSummary(String stage, Matcher matcher) throws IOException {
+        start(stage, "testSummary")
+                .field("total", Long.parseLong(matcher.group(1)))
+                .field("failed", Long.parseLong(matcher.group(2)))
+                .field("errors", Long.parseLong(matcher.group(3)))
+                .field("passed", Long.parseLong(matcher.group(4)))
+                .write();
+    }
+
+    /**
+     * Retrieves the configured tasks of the stage.
+     *
+     * @param stage the stage name
+     * @return the stage tasks
+     */
+    private List<String> getTasks(String stage) {
+        final List<String> tasks = tasksByStage.get(stage);
+        return tasks != null ? tasks : Collections.<String>emptyList();
+    }
+
+    /**
+     * Retrieves the name of the task.
+     *
+     * @param stage the stage name
+     * @param index the task index
+     * @return the task name
+     */
+    private String getTask(String stage, int index) {
+        final List<String> tasks = getTasks(stage);
+        return index < tasks.size() ? tasks.get(index) : "command " + (index + 1);
+    }
+
+    /**
+     * Starts new event.
+     *
+     * @param stage the stage name
+     * @param type  the event type
+     * @return the event writer
+     */
+    private SbtEventWriter start(String stage, String type) {
+        event.setLength(0);
+        event.append("{\"timestamp\":").append(System.currentTimeMillis());
+        if (stage != null) {
+            field("stage", stage);
+        }
+        return field("type", type);
+    }
+
+    /**
+     * Appends the string field to the current event.
+     *
+     * @param name  the field name
+     * @param value the field value
+     * @return the event writer
+     */
+    private SbtEventWriter field(String name, String value) {
+        event.append(",\"").append(name).append("\":\"");
+        for (int index = 0; index < value.length(); index++) {
+            final char c = value.charAt(index);
+            switch (c) {
+                case '"':
+                    event.append("\\\"");
+                    break;
+                case '\\':
+                    event.append("\\\\");
+                    break;
+                case '\t':
+                    event.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        event.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        event.append(c);
+                    }
+            }
+        }
+        event.append('"');
+        return this;
+    }
+
+    /**
+     * Appends the numeric field to the current event.
+     *
+     * @param name  the field name
+     * @param value the field value
+     * @return the event writer
+     */
+    private SbtEventWriter field(String name, long value) {
+        event.append(",\"").append(name).append("\":").append(value);
+        return this;
+    }
+
+    /**
+     * Appends the boolean field to the current event.
+     *
+     * @param name  the field name
+     * @param value the field value
+     * @return the event writer
+     */
+    private SbtEventWriter field(String name, boolean value) {
+        event.append(",\"").append(name).append("\":").append(value);
+        return this;
+    }
+
+    /**
+     * Writes the current event.
+     *
+     * @throws IOException if any error occurs
+     */
+    private void write() throws IOException {
+        event.append("}\n");
+        output.append(event);
+        output.flush();
+    }
+
+    /**
+     * The progress of single stage.
+     */
+    private static final class Progress {
+
+        /**
+         * The index of the current task.
+         */
+        private int task;
+
+        /**
+         * The start time of the current task.
+         */
+        private long started;
+    }
+}
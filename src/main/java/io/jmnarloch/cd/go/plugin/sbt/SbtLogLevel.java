@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2015 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jmnarloch.cd.go.plugin.sbt;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The SBT log level of the output line.
+ *
+ * @author Jakub Narloch
+ */
+enum SbtLogLevel {
+
+    /**
+     * The error.
+     */
+    ERROR,
+
+    /**
+     * The warning.
+     */
+    WARN,
+
+    /**
+     * The info.
+     */
+    INFO,
+
+    /**
+     * The command success.
+     */
+    SUCCESS,
+
+    /**
+     * The line without any level, for instance the output of the tests.
+     */
+    NONE;
+
+    /**
+     * The ANSI color codes.
+     */
+    private static final Pattern ANSI = Pattern.compile("\\u001B\\[[\\d;]*m");
+
+    /**
+     * The level pattern.
+     */
+    private static final Pattern LEVEL = Pattern.compile("^\\[(error|warn|info|success)\\]");
+
+    /**
+     * Retrieves the log level of the output line. The ANSI colors are removed first, since SBT 1.x colors the level
+     * inside of the brackets.
+     *
+     * @param line the output line
+     * @return the log level
+     */
+    static SbtLogLevel of(String line) {
+        final String text = stripColors(line);
+        if (text.isEmpty() || text.charAt(0) != '[') {
+            return NONE;
+        }
+        final Matcher matcher = LEVEL.matcher(text);
+        if (!matcher.find()) {
+            return NONE;
+        }
+        return valueOf(matcher.group(1).toUpperCase());
+    }
+
+    /**
+     * Removes the ANSI colors from the output line.
+     *
+     * @param line the output line
+     * @return the line without the colors
+     */
+    static String stripColors(String line) {
+        return line.indexOf('\u001B') < 0 ? line : ANSI.matcher(line).replaceAll("");
+    }
+
+    /**
+     * Returns whether the line reports a problem.
+     *
+     * @return true for errors and warnings
+     */
+    boolean isProblem() {
+        return this == ERROR || this == WARN;
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ * Copyright (c) 2015 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jmnarloch.cd.go.plugin.sbt;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the SBT output into the compressed log file together with the index of the errors, warnings and task
+ * boundaries. The log is written as a sequence of independently compressed gzip members, so that it is still a
+ * valid gzip file, while the index allows to decompress only the member that contains the indexed line.
+ *
+ * <p>Every index line contains the tab separated entry kind, the line number, the offset of the gzip member in the
+ * log file, the offset of the line within the decompressed member and the beginning of the line itself.</p>
+ *
+ * @author Jakub Narloch
+ */
+final class SbtLogWriter implements SbtOutputListener, Closeable {
+
+    /**
+     * The logger instance used by this class.
+     */
+    private static final Logger logger = Logger.getLoggerFor(SbtLogWriter.class);
+
+    /**
+     * The index file suffix.
+     */
+    static final String INDEX_SUFFIX = ".idx";
+
+    /**
+     * The number of uncompressed bytes after which new gzip member is started.
+     */
+    private static final int BLOCK_SIZE = 256 * 1024;
+
+    /**
+     * The maximum length of the line text stored in the index.
+     */
+    private static final int INDEXED_TEXT_LENGTH = 200;
+
+    /**
+     * The index entry kind of the gzip member start.
+     */
+    private static final String BLOCK = "BLOCK";
+
+    /**
+     * The index entry kind of the task boundary.
+     */
+    private static final String TASK = "TASK";
+
+    /**
+     * The log file.
+     */
+    private final Path path;
+
+    /**
+     * The compressed log output.
+     */
+    private final CountingOutputStream output;
+
+    /**
+     * The index output.
+     */
+    private final BufferedWriter index;
+
+    /**
+     * The currently written gzip member.
+     */
+    private OutputStream block;
+
+    /**
+     * The offset of the currently written gzip member.
+     */
+    private long blockOffset;
+
+    /**
+     * The number of uncompressed bytes written into current gzip member.
+     */
+    private int blockBytes;
+
+    /**
+     * The number of written lines.
+     */
+    private long lines;
+
+    /**
+     * Whether writing the log has failed.
+     */
+    private boolean failed;
+
+    /**
+     * Creates new instance of {@link SbtLogWriter}.
+     *
+     * @param path   the log file
+     * @param output the log output
+     * @param index  the index output
+     */
+    private SbtLogWriter(Path path, CountingOutputStream output, BufferedWriter index) {
+        this.path = path;
+        this.output = output;
+        this.index = index;
+    }
+
+    /**
+     * Opens the log file and its index for writing.
+     *
+     * @param path the log file
+     * @return the log writer
+     * @throws IOException if any error occurs
+     */
+    static SbtLogWriter open(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        final BufferedWriter index = Files.newBufferedWriter(indexOf(path), StandardCharsets.UTF_8);
+        try {
+            final OutputStream file = new BufferedOutputStream(Files.newOutputStream(path));
+            return new SbtLogWriter(path, new CountingOutputStream(file), index);
+        } catch (IOException e) {
+            index.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Retrieves the index file of the log file.
+     *
+     * @param path the log file
+     * @return the index file
+     */
+    static Path indexOf(Path path) {
+        return path.resolveSibling(path.getFileName() + INDEX_SUFFIX);
+    }
+
+    /**
+     * Retrieves the log file.
+     *
+     * @return the log file
+     */
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onStart(String stage) {
+        // no action required
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void onLine(String stage, String line) {
+        if (failed) {
+            return;
+        }
+        try {
+            lines++;
+            if (block == null || blockBytes >= BLOCK_SIZE) {
+                startBlock();
+            }
+            final String output = stage == null ? line : "[" + stage + "] " + line;
+            final SbtLogLevel level = SbtLogLevel.of(line);
+            if (level.isProblem()) {
+                index(level.name(), output);
+            } else if (isTaskBoundary(level, line)) {
+                index(TASK, output);
+            }
+
+            final byte[] bytes = (output + '\n').getBytes(StandardCharsets.UTF_8);
+            block.write(bytes);
+            blockBytes += bytes.length;
+        } catch (IOException e) {
+            failed = true;
+            logger.error("The SBT log could not be written into " + path, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onComplete(String stage) {
+        // the log is shared by all of the stages and is closed once the build completes
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (block != null && !failed) {
+                block.close();
+            }
+            output.close();
+        } finally {
+            index.close();
+        }
+    }
+
+    /**
+     * Starts new gzip member.
+     *
+     * @throws IOException if any error occurs
+     */
+    private void startBlock() throws IOException {
+        if (block != null) {
+            block.close();
+        }
+        blockOffset = output.getByteCount();
+        blockBytes = 0;
+        block = new GZIPOutputStream(new CloseShieldOutputStream(output), 8192);
+        writeIndex(BLOCK, "");
+    }
+
+    /**
+     * Writes the index entry for the line that is about to be written.
+     *
+     * @param kind the entry kind
+     * @param line the line
+     * @throws IOException if any error occurs
+     */
+    private void index(String kind, String line) throws IOException {
+        writeIndex(kind, line.length() > INDEXED_TEXT_LENGTH ? line.substring(0, INDEXED_TEXT_LENGTH) : line);
+    }
+
+    /**
+     * Writes the index entry.
+     *
+     * @param kind the entry kind
+     * @param text the indexed text
+     * @throws IOException if any error occurs
+     */
+    private void writeIndex(String kind, String text) throws IOException {
+        index.write(kind);
+        index.write('\t');
+        index.write(Long.toString(lines));
+        index.write('\t');
+        index.write(Long.toString(blockOffset));
+        index.write('\t');
+        index.write(Integer.toString(blockBytes));
+        index.write('\t');
+        index.write(text.replace('\t', ' '));
+        index.newLine();
+    }
+
+    /**
+     * Returns whether the line marks the end of the SBT command.
+     *
+     * @param level the line level
+     * @param line  the line
+     * @return true if the line ends the command
+     */
+    private static boolean isTaskBoundary(SbtLogLevel level, String line) {
+        return level == SbtLogLevel.SUCCESS && line.contains("Total time:");
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2015 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jmnarloch.cd.go.plugin.sbt;
+
+/**
+ * The listener notified about every line of the SBT process output.
+ *
+ * @author Jakub Narloch
+ */
+interface SbtOutputListener {
+
+    /**
+     * Notifies that the process of the given stage has been started.
+     *
+     * @param stage the started stage, or null for the tasks
+     */
+    void onStart(String stage);
+
+    /**
+     * Handles single output line.
+     *
+     * @param stage the stage that produced the line, or null for the tasks
+     * @param line  the output line
+     */
+    void onLine(String stage, String line);
+
+    /**
+     * Notifies that the process of the given stage has completed.
+     *
+     * @param stage the completed stage, or null for the tasks
+     */
+    void onComplete(String stage);
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2015 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jmnarloch.cd.go.plugin.sbt;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Reads the SBT process output line by line and passes every line to the output listeners.
+ *
+ * @author Jakub Narloch
+ */
+class SbtOutputReader implements Runnable {
+
+    /**
+     * The logger instance used by this class.
+     */
+    private static final Logger logger = Logger.getLoggerFor(SbtOutputReader.class);
+
+    /**
+     * The process output.
+     */
+    private final InputStream input;
+
+    /**
+     * The stage name, or null for the tasks.
+     */
+    private final String stage;
+
+    /**
+     * The output listeners.
+     */
+    private final List<SbtOutputListener> listeners;
+
+    /**
+     * Creates new instance of {@link SbtOutputReader}.
+     *
+     * @param input     the process output
+     * @param stage     the stage name, or null for the tasks
+     * @param listeners the output listeners
+     */
+    SbtOutputReader(InputStream input, String stage, List<SbtOutputListener> listeners) {
+        this.input = input;
+        this.stage = stage;
+        this.listeners = listeners;
+    }
+
+    /**
+     * Starts reading the output in a separate daemon thread.
+     *
+     * @return the reading thread
+     */
+    Thread start() {
+        final Thread thread = new Thread(this, stage == null ? "sbt-output" : "sbt-output-" + stage);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, Charset.defaultCharset()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                for (SbtOutputListener listener : listeners) {
+                    listener.onLine(stage, line);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("The process output could not be read", e);
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/**
+ * Copyright (c) 2015 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jmnarloch.cd.go.plugin.sbt;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Tunes the SBT task parallelism from the observed builds. Every project is built with few candidate concurrency
+ * limits derived from the number of the agent processors, the wall time of the successful builds and the failed
+ * builds are recorded in the agent local store, and the limit that performed best is selected for the following
+ * builds, with occasional re-exploration of the other candidates that did not fail.
+ *
+ * @author Jakub Narloch
+ */
+final class SbtParallelismTuner {
+
+    /**
+     * The logger instance used by this class.
+     */
+    private static final Logger logger = Logger.getLoggerFor(SbtParallelismTuner.class);
+
+    /**
+     * The probability of exploring a random candidate instead of the best one.
+     */
+    private static final double EXPLORATION_RATE = 0.1;
+
+    /**
+     * The weight of the latest build in the moving average of the build time.
+     */
+    private static final double SMOOTHING = 0.3;
+
+    /**
+     * The store file lock suffix.
+     */
+    private static final String LOCK_SUFFIX = ".lock";
+
+    /**
+     * The store file.
+     */
+    private final Path store;
+
+    /**
+     * The store key of the project and the agent hardware profile.
+     */
+    private final String key;
+
+    /**
+     * The candidate concurrency limits.
+     */
+    private final SortedSet<Integer> candidates;
+
+    /**
+     * The random generator used for the exploration.
+     */
+    private final Random random;
+
+    /**
+     * Creates new instance of {@link SbtParallelismTuner}.
+     *
+     * @param store      the store file
+     * @param key        the store key
+     * @param candidates the candidate concurrency limits
+     * @param random     the random generator used for the exploration
+     */
+    private SbtParallelismTuner(Path store, String key, SortedSet<Integer> candidates, Random random) {
+        this.store = store;
+        this.key = key;
+        this.candidates = candidates;
+        this.random = random;
+    }
+
+    /**
+     * Creates the tuner of the project.
+     *
+     * @param store   the agent local store file
+     * @param project the project identifier, for instance the working directory and the tasks
+     * @return the parallelism tuner
+     */
+    static SbtParallelismTuner forProject(Path store, String project) {
+        return forProject(store, project, new Random());
+    }
+
+    /**
+     * Creates the tuner of the project.
+     *
+     * @param store   the agent local store file
+     * @param project the project identifier, for instance the working directory and the tasks
+     * @param random  the random generator used for the exploration
+     * @return the parallelism tuner
+     */
+    static SbtParallelismTuner forProject(Path store, String project, Random random) {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        final SortedSet<Integer> candidates = new TreeSet<Integer>();
+        candidates.add(Math.max(1, processors / 2));
+        candidates.add(processors);
+        candidates.add(processors * 2);
+
+        final String key = String.format("%s.%dcpu.%s", hash(project), processors, System.getProperty("os.arch"));
+        return new SbtParallelismTuner(store, key, candidates, random);
+    }
+
+    /**
+     * Selects the concurrency limit for the next build. Every candidate is tried at least once, afterwards the
+     * candidate with the lowest average build time is selected. The candidates whose last build failed are skipped,
+     * unless every candidate has failed, in which case the one with the fewest consecutive failures is retried.
+     *
+     * @return the concurrency limit
+     */
+    int select() {
+        final Properties properties = load();
+
+        final List<Integer> succeeded = new ArrayList<Integer>();
+        int best = candidates.first();
+        double bestTime = Double.MAX_VALUE;
+        int leastFailed = candidates.first();
+        int leastFailures = Integer.MAX_VALUE;
+        for (Integer candidate : candidates) {
+            final Observation observation = Observation.parse(properties.getProperty(key(candidate)));
+            if (observation == null) {
+                return candidate;
+            }
+            if (observation.failures > 0) {
+                if (observation.failures < leastFailures) {
+                    leastFailed = candidate;
+                    leastFailures = observation.failures;
+                }
+                continue;
+            }
+            succeeded.add(candidate);
+            if (observation.time < bestTime) {
+                best = candidate;
+                bestTime = observation.time;
+            }
+        }
+
+        if (succeeded.isEmpty()) {
+            return leastFailed;
+        }
+        if (random.nextDouble() < EXPLORATION_RATE) {
+            return succeeded.get(random.nextInt(succeeded.size()));
+        }
+        return best;
+    }
+
+    /**
+     * Records the successful build. The store is updated under the file lock, since it is shared by all of the
+     * agents running on the same host, and replaced atomically so that it can be read without the lock. Only the
+     * build wall time is recorded, the load of the host is not taken into account.
+     *
+     * @param candidate the concurrency limit used by the build
+     * @param time      the build wall time in milliseconds, including the stages
+     */
+    void record(int candidate, long time) {
+        synchronized (SbtParallelismTuner.class) {
+            store(candidate, time);
+        }
+    }
+
+    /**
+     * Records the failed build, the candidate is not selected again until it builds successfully.
+     *
+     * @param candidate the concurrency limit used by the build
+     */
+    void recordFailure(int candidate) {
+        synchronized (SbtParallelismTuner.class) {
+            store(candidate, -1);
+        }
+    }
+
+    /**
+     * Stores the observation of the build.
+     *
+     * @param candidate the concurrency limit used by the build
+     * @param time      the build wall time in milliseconds, or -1 if the build has failed
+     */
+    private void store(int candidate, long time) {
+        try {
+            Files.createDirectories(store.getParent());
+            try (FileChannel channel = FileChannel.open(store.resolveSibling(store.getFileName() + LOCK_SUFFIX),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+
+                final FileLock lock = channel.lock();
+                try {
+                    final Properties properties = load();
+                    Observation observation = Observation.parse(properties.getProperty(key(candidate)));
+                    if (observation == null) {
+                        observation = new Observation(0, 0, 0);
+                    }
+                    properties.setProperty(key(candidate), (time < 0 ? observation.fail() : observation.add(time))
+                            .toString());
+
+                    final Path temp = Files.createTempFile(store.getParent(), store.getFileName().toString(), null);
+                    try (OutputStream output = Files.newOutputStream(temp)) {
+                        properties.store(output, "SBT task parallelism observations");
+                    }
+                    Files.move(temp, store, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    lock.release();
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("The parallelism observation could not be stored in " + store, e);
+        }
+    }
+
+    /**
+     * Loads the store.
+     *
+     * @return the stored observations
+     */
+    private Properties load() {
+        final Properties properties = new Properties();
+        if (!Files.isRegularFile(store)) {
+            return properties;
+        }
+        try (InputStream input = Files.newInputStream(store)) {
+            properties.load(input);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("The parallelism observations could not be loaded from " + store, e);
+        }
+        return properties;
+    }
+
+    /**
+     * Retrieves the store key of the candidate.
+     *
+     * @param candidate the concurrency limit
+     * @return the store key
+     */
+    private String key(int candidate) {
+        return key + "." + candidate;
+    }
+
+    /**
+     * Calculates the SHA-256 of the project identifier.
+     *
+     * @param project the project identifier
+     * @return the hex encoded hash
+     */
+    private static String hash(String project) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("The SHA-256 is not supported", e);
+        }
+
+        final StringBuilder hash = new StringBuilder();
+        for (byte value : digest.digest(project.getBytes(StandardCharsets.UTF_8))) {
+            hash.append(String.format("%02x", value));
+        }
+        return hash.toString();
+    }
+
+    /**
+     * The observed builds of single candidate.
+     */
+    private static final class Observation {
+
+        /**
+         * The number of successful builds.
+         */
+        private final int builds;
+
+        /**
+         * The moving average of the build wall time in milliseconds.
+         */
+        private final double time;
+
+        /**
+         * The number of the consecutive failed builds.
+         */
+        private final int failures;
+
+        /**
+         * Creates new instance of {@link Observation}.
+         *
+         * @param builds   the number of successful builds
+         * @param time     the average build time
+         * @param failures the number of the consecutive failed builds
+         */
+        private Observation(int builds, double time, int failures) {
+            this.builds = builds;
+            this.time = time;
+            this.failures = failures;
+        }
+
+        /**
+         * Adds the successful build to the observation.
+         *
+         * @param time the build time
+         * @return the updated observation
+         */
+        private Observation add(long time) {
+            return new Observation(builds + 1, builds == 0 ? time : SMOOTHING * time + (1 - SMOOTHING) * this.time,
+                    0);
+        }
+
+        /**
+         * Adds the failed build to the observation.
+         *
+         * @return the updated observation
+         */
+        private Observation fail() {
+            return new Observation(builds, time, failures + 1);
+        }
+
+        /**
+         * Parses the stored observation, the observations stored without the failures are accepted as well.
+         *
+         * @param value the stored value
+         * @return the observation, or null if there is no valid observation
+         */
+        private static Observation parse(String value) {
+            if (value == null) {
+                return null;
+            }
+            final String[] parts = value.split(",");
+            if (parts.length != 2 && parts.length != 3) {
+                return null;
+            }
+            try {
+                return new Observation(Integer.parseInt(parts[0]), Double.parseDouble(parts[1]),
+                        parts.length == 3 ? Integer.parseInt(parts[2]) : 0);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d,%.0f,%d", builds, time, failures);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2015 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jmnarloch.cd.go.plugin.sbt;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The SBT stage, a named set of tasks that is executed independently from the other stages.
+ *
+ * @author Jakub Narloch
+ */
+final class SbtStage {
+
+    /**
+     * The stage definition pattern, the name has to be followed by a colon and whitespace so that the scoped tasks
+     * like {@code test:compile} are not mistaken for the stage name.
+     */
+    private static final Pattern STAGE = Pattern.compile("^([\\w.-]+):\\s+(.+)$");
+
+    /**
+     * The stage name.
+     */
+    private final String name;
+
+    /**
+     * The stage tasks.
+     */
+    private final List<String> tasks;
+
+    /**
+     * Creates new instance of {@link SbtStage}.
+     *
+     * @param name  the stage name
+     * @param tasks the stage tasks
+     */
+    private SbtStage(String name, List<String> tasks) {
+        this.name = name;
+        this.tasks = Collections.unmodifiableList(tasks);
+    }
+
+    /**
+     * Retrieves the stage name.
+     *
+     * @return the stage name
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Retrieves the stage tasks.
+     *
+     * @return the stage tasks
+     */
+    List<String> getTasks() {
+        return tasks;
+    }
+
+    /**
+     * Parses the stages definition, each non blank line defines single stage in form of {@code name: tasks}. The
+     * name is optional and defaults to the stage tasks.
+     *
+     * @param definition the stages definition
+     * @return the list of stages
+     */
+    static List<SbtStage> parse(String definition) {
+        final List<SbtStage> stages = new ArrayList<SbtStage>();
+        if (StringUtils.isBlank(definition)) {
+            return stages;
+        }
+
+        for (String line : definition.split("\\r?\\n")) {
+            final String stage = line.trim();
+            if (stage.isEmpty()) {
+                continue;
+            }
+
+            final Matcher matcher = STAGE.matcher(stage);
+            if (matcher.matches()) {
+                stages.add(new SbtStage(matcher.group(1), split(matcher.group(2))));
+            } else {
+                stages.add(new SbtStage(stage, split(stage)));
+            }
+        }
+        return stages;
+    }
+
+    /**
+     * Splits the tasks.
+     *
+     * @param tasks the tasks
+     * @return the list of tasks
+     */
+    private static List<String> split(String tasks) {
+        return new ArrayList<String>(Arrays.asList(tasks.trim().split("\\s+")));
+    }
+}
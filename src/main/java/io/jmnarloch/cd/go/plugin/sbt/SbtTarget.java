@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2015 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jmnarloch.cd.go.plugin.sbt;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The SBT target directories, which are removed by the clean task while the build is running.
+ *
+ * @author Jakub Narloch
+ */
+final class SbtTarget {
+
+    /**
+     * The target directory name.
+     */
+    private static final String TARGET = "target";
+
+    /**
+     * Prevents from instantiation.
+     */
+    private SbtTarget() {
+    }
+
+    /**
+     * Returns whether the file is in any target directory, either of the root project or of any subproject.
+     *
+     * @param file the file path
+     * @return true if the file is in the target directory
+     */
+    static boolean contains(String file) {
+        try {
+            final Path parent = Paths.get(file).getParent();
+            if (parent == null) {
+                return false;
+            }
+            for (Path name : parent) {
+                if (TARGET.equals(name.toString())) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (InvalidPathException e) {
+            return false;
+        }
+    }
+}
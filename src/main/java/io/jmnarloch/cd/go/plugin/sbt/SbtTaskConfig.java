@@ -47,7 +47,43 @@ public enum SbtTaskConfig {
      * Additional options to be passed to SBT process.
      */
     @ConfigProperty
-    ADDITIONAL_OPTIONS("AdditionalOptions");
+    ADDITIONAL_OPTIONS("AdditionalOptions"),
+
+    /**
+     * The independent stages to execute concurrently once the tasks have completed.
+     */
+    @ConfigProperty
+    STAGES("Stages"),
+
+    /**
+     * The compressed log file the whole SBT output is written to.
+     */
+    @ConfigProperty
+    LOG_FILE("LogFile"),
+
+    /**
+     * The report file of the compiler profile, enables the Scala compiler profiling.
+     */
+    @ConfigProperty
+    COMPILER_PROFILE("CompilerProfile"),
+
+    /**
+     * Whether the SBT task parallelism should be tuned from the observed builds.
+     */
+    @ConfigProperty
+    PARALLELISM_TUNING("ParallelismTuning"),
+
+    /**
+     * The patterns of the build artifacts deduplicated through the agent local content store.
+     */
+    @ConfigProperty
+    DEDUPLICATED_ARTIFACTS("DeduplicatedArtifacts"),
+
+    /**
+     * The file the build events are written to as newline delimited JSON.
+     */
+    @ConfigProperty
+    EVENT_FILE("EventFile");
 
     /**
      * The property name.
@@ -24,8 +24,13 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static io.jmnarloch.cd.go.plugin.sbt.Sbt.sbt;
 
@@ -56,6 +61,65 @@ final class SbtTaskConfigParser {
      */
     private static final String OS_NAME = "os.name";
 
+    /**
+     * The command enabling the Scala compiler phase timings.
+     */
+    private static final String COMPILER_PROFILING = "gocdProfileCompiler";
+
+    /**
+     * Defines the command enabling the Scala compiler phase timings. The compiler option is appended to the compile
+     * and test configurations of every project once the build has been loaded, so that it is kept by the projects
+     * that define their own compiler options. The option is added to the session, so that it survives any following
+     * {@code set} command.
+     */
+    private static final String COMPILER_PROFILING_COMMAND = "set commands in Global += Command.command(\""
+            + COMPILER_PROFILING + "\") { state => val extracted = Project.extract(state); "
+            + "BuiltinCommands.reapply(extracted.session.appendRaw(Project.transform("
+            + "Scope.replaceThis(Scope.GlobalScope), extracted.structure.allProjectRefs.flatMap(ref => "
+            + "Seq(Compile, Test).map(config => scalacOptions in (ref, config) += \"-verbose\")))), "
+            + "extracted.structure, state) }";
+
+    /**
+     * Serializes the compilations, so that the phase timings printed by the compiler can be attributed to the
+     * subproject being compiled.
+     */
+    private static final String SERIAL_COMPILATION = "set concurrentRestrictions in Global += "
+            + "Tags.limit(Tags.Compile, 1)";
+
+    /**
+     * Limits the number of the concurrently executed tasks and forked test groups.
+     */
+    private static final String CONCURRENCY_LIMIT = "set concurrentRestrictions in Global ++= "
+            + "Seq(Tags.limitAll(%1$d), Tags.limit(Tags.ForkedTestGroup, %1$d))";
+
+    /**
+     * The SBT launcher options followed by their value.
+     */
+    private static final Set<String> OPTIONS_WITH_VALUE = new HashSet<String>(Arrays.asList("-sbt-version",
+            "-sbt-jar", "-sbt-dir", "-sbt-boot", "-sbt-launch-dir", "-sbt-launch-repo", "-ivy", "-mem",
+            "-java-home", "-jvm-debug", "-scala-home", "-scala-version"));
+
+    /**
+     * The SBT commands that do not print the total time once completed, and therefore are not named as tasks.
+     */
+    private static final Set<String> NON_TASK_COMMANDS = new HashSet<String>(Arrays.asList("project", "set",
+            "reload"));
+
+    /**
+     * The task compiling the test sources, which are shared by the test tasks of the stages.
+     */
+    private static final String TEST_COMPILE = "test:compile";
+
+    /**
+     * Matches a stage task scoped to a configuration, optionally prefixed with the project, e.g. {@code it:test}.
+     */
+    private static final Pattern CONFIGURATION_TASK = Pattern.compile("^((?:[\\w-]+/)?[a-z][\\w-]*):[\\w-]+$");
+
+    /**
+     * Disables the SBT server, so that the concurrently executed stages do not race to start it.
+     */
+    private static final String SBT_SERVER_DISABLED = "-Dsbt.server.autostart=false";
+
     /**
      * The task configuration.
      */
@@ -71,11 +135,26 @@ final class SbtTaskConfigParser {
      */
     private final List<String> options = new ArrayList<String>();
 
+    /**
+     * The SBT commands passed in the additional options, executed before the tasks of every stage.
+     */
+    private final List<String> commands = new ArrayList<String>();
+
+    /**
+     * The SBT stages.
+     */
+    private final List<SbtStage> stages = new ArrayList<SbtStage>();
+
     /**
      * The execution environment.
      */
     private Map<String, String> environment = new HashMap<String, String>();
 
+    /**
+     * The maximum number of the concurrently executed tasks, shared by the tasks and the stages, 0 if unlimited.
+     */
+    private int concurrencyLimit;
+
     /**
      * SBT HOME dir.
      */
@@ -126,7 +205,8 @@ final class SbtTaskConfigParser {
     SbtTaskConfigParser withSbtVersion(String propertyKey) {
         String version = configuration.getProperty(propertyKey);
         if (!StringUtils.isBlank(version)) {
-            this.options.add(String.format("-Dsbt.version=%s", version));
+            this.sbtVersion = version.trim();
+            this.options.add(String.format("-Dsbt.version=%s", sbtVersion));
         }
         return this;
     }
@@ -154,11 +234,59 @@ final class SbtTaskConfigParser {
     SbtTaskConfigParser withAdditionalOptions(String propertyKey) {
         final String additional = configuration.getProperty(propertyKey);
         if (!StringUtils.isBlank(additional)) {
-            this.options.addAll(Arrays.asList(additional.split("\\s+")));
+            final List<String> arguments = Arrays.asList(additional.trim().split("\\s+"));
+            this.options.addAll(arguments);
+            for (int index = 0; index < arguments.size(); index++) {
+                final String argument = arguments.get(index);
+                if (OPTIONS_WITH_VALUE.contains(argument)) {
+                    index++;
+                } else if (!argument.startsWith("-")) {
+                    this.commands.add(argument);
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Specifies the SBT stages to be executed concurrently after the tasks.
+     *
+     * @param propertyKey the name of the property that specifies this setting
+     * @return the config parser
+     */
+    SbtTaskConfigParser withStages(String propertyKey) {
+        this.stages.addAll(SbtStage.parse(configuration.getProperty(propertyKey)));
+        return this;
+    }
+
+    /**
+     * Specifies whether the Scala compiler profiling should be enabled, the profiling is enabled whenever the report
+     * file has been specified. The subprojects are compiled one at a time while profiling.
+     *
+     * @param propertyKey the name of the property that specifies this setting
+     * @return the config parser
+     */
+    SbtTaskConfigParser withCompilerProfile(String propertyKey) {
+        final String report = configuration.getProperty(propertyKey);
+        if (!StringUtils.isBlank(report)) {
+            this.options.add(SERIAL_COMPILATION);
+            this.options.add(COMPILER_PROFILING_COMMAND);
+            this.options.add(COMPILER_PROFILING);
         }
         return this;
     }
 
+    /**
+     * Specifies the maximum number of the concurrently executed SBT tasks.
+     *
+     * @param limit the concurrency limit
+     * @return the config parser
+     */
+    SbtTaskConfigParser withConcurrencyLimit(int limit) {
+        this.concurrencyLimit = limit;
+        return this;
+    }
+
     /**
      * Creates new instance of {@link SbtTaskConfigParser}.
      *
@@ -169,6 +297,55 @@ final class SbtTaskConfigParser {
         return new SbtTaskConfigParser(config);
     }
 
+    /**
+     * Retrieves the requested SBT version.
+     *
+     * @return the SBT version, or null if not specified
+     */
+    String getSbtVersion() {
+        return sbtVersion;
+    }
+
+    /**
+     * Retrieves the SBT tasks of every stage, including the commands passed in the additional options, in order of
+     * their execution.
+     *
+     * @return the SBT tasks mapped by the stage name, the tasks executed before the stages are mapped by null
+     */
+    Map<String, List<String>> getTasksByStage() {
+        final Map<String, List<String>> tasksByStage = new LinkedHashMap<String, List<String>>();
+        tasksByStage.put(null, withCommands(getTasks()));
+        for (SbtStage stage : stages) {
+            tasksByStage.put(stage.getName(), withCommands(stage.getTasks()));
+        }
+        return tasksByStage;
+    }
+
+    /**
+     * Prepends the commands passed in the additional options to the tasks, skipping the commands that do not print
+     * the total time, such as {@code ++2.12.1} or {@code project core}, so that the tasks are named in order of their
+     * completion.
+     *
+     * @param tasks the tasks
+     * @return the commands followed by the tasks
+     */
+    private List<String> withCommands(List<String> tasks) {
+        final List<String> arguments = new ArrayList<String>(commands);
+        arguments.addAll(tasks);
+
+        final List<String> all = new ArrayList<String>();
+        for (int index = 0; index < arguments.size(); index++) {
+            final String argument = arguments.get(index);
+            if ("++".equals(argument) || "project".equals(argument)) {
+                index++;
+            } else if (!argument.startsWith("+") && !argument.startsWith(";")
+                    && !NON_TASK_COMMANDS.contains(argument)) {
+                all.add(argument);
+            }
+        }
+        return all;
+    }
+
     /**
      * Builds the SBT executable command.
      *
@@ -178,10 +355,78 @@ final class SbtTaskConfigParser {
         final List<String> command = new ArrayList<String>();
         setSbtCommand(command);
         command.addAll(options);
-        command.addAll(tasks);
+        addConcurrencyLimit(command, concurrencyLimit);
+        command.addAll(getTasks());
         return command;
     }
 
+    /**
+     * Retrieves the tasks executed before the stages. The stages are executed by separate SBT processes sharing the
+     * target directories, so that the configurations they depend on are compiled upfront, instead of being compiled
+     * concurrently by every stage.
+     *
+     * @return the SBT tasks followed by the compilation of the stage configurations
+     */
+    private List<String> getTasks() {
+        final List<String> all = new ArrayList<String>(tasks);
+        if (!stages.isEmpty()) {
+            addTask(all, TEST_COMPILE);
+        }
+        for (SbtStage stage : stages) {
+            for (String task : stage.getTasks()) {
+                final Matcher matcher = CONFIGURATION_TASK.matcher(task);
+                if (matcher.matches()) {
+                    addTask(all, matcher.group(1) + ":compile");
+                }
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Adds the task, unless it is already executed.
+     *
+     * @param tasks the tasks
+     * @param task  the task to add
+     */
+    private static void addTask(List<String> tasks, String task) {
+        if (!tasks.contains(task)) {
+            tasks.add(task);
+        }
+    }
+
+    /**
+     * Builds the SBT executable command for every stage.
+     *
+     * @return the SBT executable commands mapped by the stage name
+     */
+    Map<String, List<String>> buildStages() {
+        final Map<String, List<String>> commands = new LinkedHashMap<String, List<String>>();
+        for (SbtStage stage : stages) {
+            final List<String> command = new ArrayList<String>();
+            setSbtCommand(command);
+            command.addAll(options);
+            command.add(SBT_SERVER_DISABLED);
+            addConcurrencyLimit(command, Math.max(1, concurrencyLimit / stages.size()));
+            command.addAll(stage.getTasks());
+            commands.put(stage.getName(), command);
+        }
+        return commands;
+    }
+
+    /**
+     * Adds the concurrency limit to the command, if the limit has been specified. The stages are executed
+     * concurrently, so that each of them gets only its share of the limit.
+     *
+     * @param command the SBT command
+     * @param limit   the concurrency limit
+     */
+    private void addConcurrencyLimit(List<String> command, int limit) {
+        if (concurrencyLimit > 0) {
+            command.add(String.format(CONCURRENCY_LIMIT, limit));
+        }
+    }
+
     /**
      * Sets the SBT command.
      *
@@ -21,12 +21,25 @@ import io.jmnarloch.cd.go.plugin.api.executor.ExecutionConfiguration;
 import io.jmnarloch.cd.go.plugin.api.executor.ExecutionContext;
 import io.jmnarloch.cd.go.plugin.api.executor.ExecutionResult;
 import io.jmnarloch.cd.go.plugin.api.executor.TaskExecutor;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The SBT task executor.
@@ -50,21 +63,86 @@ public class SbtTaskExecutor implements TaskExecutor {
      */
     private static final String FAILURE = "Build failure";
 
+    /**
+     * The number of the last output lines printed to the console when the output is written to the log file.
+     */
+    private static final int CONSOLE_TAIL_SIZE = 100;
+
+    /**
+     * The agent local store of the observed parallelism, relative to the user home directory.
+     */
+    private static final String PARALLELISM_STORE = ".gocd-sbt-plugin/parallelism.properties";
+
+    /**
+     * The agent local content store of the deduplicated artifacts, relative to the user home directory.
+     */
+    private static final String CONTENT_STORE = ".gocd-sbt-plugin/content-store";
+
     /**
      * {@inheritDoc}
      */
     @Override
     public ExecutionResult execute(ExecutionContext context, ExecutionConfiguration config, JobConsoleLogger console) {
 
+        final String compilerProfile = config.getProperty(SbtTaskConfig.COMPILER_PROFILE.getName());
+        SbtLogWriter log = null;
+        SbtCompilerProfiler profiler = null;
+        SbtEventWriter events = null;
         try {
-            final ProcessBuilder sbt = buildSbtProcess(context, config);
+            final SbtTaskConfigParser parser = parse(config, context.getEnvironmentVariables());
+
+            final SbtParallelismTuner tuner = createTuner(context, config);
+            final int concurrencyLimit = tuner != null ? tuner.select() : 0;
+            if (tuner != null) {
+                parser.withConcurrencyLimit(concurrencyLimit);
+                console.printLine(String.format("Limiting the SBT task concurrency to %d", concurrencyLimit));
+            }
+
+            final List<String> command = parser.build();
+
+            if (!verifyEnvironment(context, command.get(0), parser.getSbtVersion(), console)) {
+                return ExecutionResult.failure(FAILURE);
+            }
+
+            restoreArtifacts(context, console);
+            final SbtArtifactDeduplicator deduplicator = createDeduplicator(context, config, console);
+
+            log = openLog(context, config.getProperty(SbtTaskConfig.LOG_FILE.getName()), console);
+            profiler = StringUtils.isBlank(compilerProfile) ? null : new SbtCompilerProfiler();
+
+            events = openEvents(context, config.getProperty(SbtTaskConfig.EVENT_FILE.getName()),
+                    parser.getTasksByStage(), console);
+
+            final SbtBuildOutput output = createOutput(console, log, profiler, events);
+
+            final ProcessBuilder sbt = buildSbtProcess(context, command);
+
+            final long start = System.nanoTime();
 
-            int result = execute(sbt, console);
+            int result = execute(sbt, null, output);
 
             if (!isSuccess(result)) {
+                recordFailure(tuner, concurrencyLimit);
                 return ExecutionResult.failure(FAILURE);
             }
 
+            final List<String> failed = executeStages(context, parser.buildStages(), console, output);
+
+            if (!failed.isEmpty()) {
+                recordFailure(tuner, concurrencyLimit);
+                final String message = String.format("%s, failed stages: %s", FAILURE, failed);
+                console.printLine(message);
+                return ExecutionResult.failure(message);
+            }
+
+            if (tuner != null) {
+                tuner.record(concurrencyLimit, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+
+            if (deduplicator != null) {
+                deduplicate(deduplicator, console);
+            }
+
             return ExecutionResult.success(SUCCESS);
         } catch (Exception e) {
             logger.error("Build failed with error", e);
@@ -73,22 +151,280 @@ public class SbtTaskExecutor implements TaskExecutor {
             console.printLine(ExceptionUtils.getStackTrace(e));
 
             return ExecutionResult.failure(FAILURE, e);
+        } finally {
+            closeLog(log, console);
+            closeEvents(events);
+            writeCompilerProfile(context, compilerProfile, profiler, console);
+        }
+    }
+
+    /**
+     * Restores the artifacts deduplicated by the previous build in the same workspace. The artifacts are restored
+     * whether the deduplication is still enabled or not, since the build would otherwise overwrite the content
+     * shared with the other workspaces.
+     *
+     * @param context the build context
+     * @param console the job console
+     * @throws IOException if the artifacts could not be restored
+     */
+    private void restoreArtifacts(ExecutionContext context, JobConsoleLogger console) throws IOException {
+
+        final int restored = SbtArtifactDeduplicator.restore(Paths.get(context.getWorkingDirectory()));
+        if (restored > 0) {
+            console.printLine(String.format("Restored %d deduplicated artifacts", restored));
+        }
+    }
+
+    /**
+     * Creates the artifact deduplicator if the deduplicated artifacts have been configured.
+     *
+     * @param context the build context
+     * @param config  the build configuration
+     * @param console the job console
+     * @return the artifact deduplicator, or null if the deduplication has not been enabled or is not supported
+     */
+    private SbtArtifactDeduplicator createDeduplicator(ExecutionContext context, ExecutionConfiguration config,
+                                                      JobConsoleLogger console) {
+
+        final String patterns = config.getProperty(SbtTaskConfig.DEDUPLICATED_ARTIFACTS.getName());
+        if (StringUtils.isBlank(patterns)) {
+            return null;
+        }
+        final Path workspace = Paths.get(context.getWorkingDirectory());
+        if (!SbtArtifactDeduplicator.isSupported(workspace)) {
+            console.printLine("The artifact deduplication is not supported by the workspace file system");
+            return null;
+        }
+        final Path store = Paths.get(System.getProperty("user.home")).resolve(CONTENT_STORE);
+        return new SbtArtifactDeduplicator(store, workspace, Arrays.asList(patterns.trim().split("\\s+")));
+    }
+
+    /**
+     * Deduplicates the build artifacts and reports the saved space, the build does not fail if the artifacts could
+     * not be deduplicated.
+     *
+     * @param deduplicator the artifact deduplicator
+     * @param console      the job console
+     * @throws InterruptedException if the build has been interrupted
+     */
+    private void deduplicate(SbtArtifactDeduplicator deduplicator, JobConsoleLogger console)
+            throws InterruptedException {
+
+        try {
+            final SbtArtifactDeduplicator.Result result = deduplicator.deduplicate();
+            console.printLine(String.format("Deduplicated %d artifacts, saved %s", result.getFiles(),
+                    FileUtils.byteCountToDisplaySize(result.getSaved())));
+        } catch (IOException e) {
+            logger.warn("The build artifacts could not be deduplicated", e);
+            console.printLine("The build artifacts could not be deduplicated: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Creates the parallelism tuner if the parallelism tuning has been enabled.
+     *
+     * @param context the build context
+     * @param config  the build configuration
+     * @return the parallelism tuner, or null if the tuning has not been enabled
+     */
+    private SbtParallelismTuner createTuner(ExecutionContext context, ExecutionConfiguration config) {
+
+        if (!Boolean.parseBoolean(config.getProperty(SbtTaskConfig.PARALLELISM_TUNING.getName()))) {
+            return null;
+        }
+        final Path store = Paths.get(System.getProperty("user.home")).resolve(PARALLELISM_STORE);
+        final String project = context.getWorkingDirectory() + File.pathSeparator
+                + config.getProperty(SbtTaskConfig.TASKS.getName());
+        return SbtParallelismTuner.forProject(store, project);
+    }
+
+    /**
+     * Records the failed build, so that the concurrency limit that made the build fail, for instance by running out
+     * of memory, is not selected again.
+     *
+     * @param tuner            the parallelism tuner, might be null
+     * @param concurrencyLimit the concurrency limit used by the build
+     */
+    private void recordFailure(SbtParallelismTuner tuner, int concurrencyLimit) {
+
+        if (tuner != null) {
+            tuner.recordFailure(concurrencyLimit);
+        }
+    }
+
+    /**
+     * Opens the log file if it has been configured.
+     *
+     * @param context the build context
+     * @param logFile the log file relative to the working directory
+     * @param console the job console
+     * @return the log writer, or null if the log file has not been configured
+     * @throws IOException if the log file could not be created
+     */
+    private SbtLogWriter openLog(ExecutionContext context, String logFile, JobConsoleLogger console)
+            throws IOException {
+
+        if (StringUtils.isBlank(logFile)) {
+            return null;
+        }
+        if (SbtTarget.contains(logFile.trim())) {
+            console.printLine(String.format("The log file %s is in the target directory, it might be removed by "
+                    + "the clean task", logFile.trim()));
+        }
+        final SbtLogWriter log = SbtLogWriter.open(Paths.get(context.getWorkingDirectory()).resolve(logFile.trim()));
+        console.printLine(String.format("Writing the SBT output to %s, only the warnings, errors and the last %d "
+                + "lines are printed", log.getPath(), CONSOLE_TAIL_SIZE));
+        return log;
+    }
+
+    /**
+     * Closes the log file.
+     *
+     * @param log     the log writer, might be null
+     * @param console the job console
+     */
+    private void closeLog(SbtLogWriter log, JobConsoleLogger console) {
+
+        if (log == null) {
+            return;
+        }
+        try {
+            log.close();
+            console.printLine(String.format("The SBT output has been written to %s and indexed in %s",
+                    log.getPath(), SbtLogWriter.indexOf(log.getPath())));
+        } catch (IOException e) {
+            logger.error("The SBT log could not be closed", e);
         }
     }
 
+    /**
+     * Opens the event file if it has been configured.
+     *
+     * @param context      the build context
+     * @param eventFile    the event file relative to the working directory
+     * @param tasksByStage the configured tasks of every stage
+     * @param console      the job console
+     * @return the event writer, or null if the event file has not been configured
+     * @throws IOException if the event file could not be created
+     */
+    private SbtEventWriter openEvents(ExecutionContext context, String eventFile,
+                                      Map<String, List<String>> tasksByStage, JobConsoleLogger console)
+            throws IOException {
+
+        if (StringUtils.isBlank(eventFile)) {
+            return null;
+        }
+        if (SbtTarget.contains(eventFile.trim())) {
+            console.printLine(String.format("The event file %s is in the target directory, it might be removed by "
+                    + "the clean task", eventFile.trim()));
+        }
+        final SbtEventWriter events = SbtEventWriter.open(
+                Paths.get(context.getWorkingDirectory()).resolve(eventFile.trim()), tasksByStage);
+        console.printLine(String.format("Writing the build events to %s", events.getPath()));
+        return events;
+    }
+
+    /**
+     * Closes the event file.
+     *
+     * @param events the event writer, might be null
+     */
+    private void closeEvents(SbtEventWriter events) {
+
+        if (events == null) {
+            return;
+        }
+        try {
+            events.close();
+        } catch (IOException e) {
+            logger.error("The build events could not be closed", e);
+        }
+    }
+
+    /**
+     * Writes the compiler profile report if the compiler profiling has been enabled.
+     *
+     * @param context  the build context
+     * @param report   the report file relative to the working directory
+     * @param profiler the compiler profiler, might be null
+     * @param console  the job console
+     */
+    private void writeCompilerProfile(ExecutionContext context, String report, SbtCompilerProfiler profiler,
+                                      JobConsoleLogger console) {
+
+        if (profiler == null) {
+            return;
+        }
+        try {
+            final Path path = Paths.get(context.getWorkingDirectory()).resolve(report.trim());
+            profiler.write(path);
+            profiler.print(console);
+            console.printLine(String.format("The compiler profile has been written to %s", path));
+        } catch (IOException e) {
+            logger.error("The compiler profile could not be written", e);
+        }
+    }
+
+    /**
+     * Creates the build output.
+     *
+     * @param console  the job console
+     * @param log      the log writer, might be null
+     * @param profiler the compiler profiler, might be null
+     * @param events   the event writer, might be null
+     * @return the build output
+     */
+    private SbtBuildOutput createOutput(JobConsoleLogger console, SbtLogWriter log, SbtCompilerProfiler profiler,
+                                        SbtEventWriter events) {
+
+        final SbtBuildOutput output = new SbtBuildOutput(console, log == null ? 0 : CONSOLE_TAIL_SIZE);
+        if (log != null) {
+            output.withListener(log);
+        }
+        if (profiler != null) {
+            output.withListener(profiler);
+        }
+        if (events != null) {
+            output.withListener(events);
+        }
+        return output;
+    }
+
+    /**
+     * Verifies that the agent is able to execute the build before the SBT process is started.
+     *
+     * @param context    the build context
+     * @param executable the SBT executable
+     * @param sbtVersion the requested SBT version
+     * @param console    the job console
+     * @return true if the environment is able to execute the build
+     */
+    private boolean verifyEnvironment(ExecutionContext context, String executable, String sbtVersion,
+                                      JobConsoleLogger console) {
+
+        final SbtEnvironmentProbe.Result probe = SbtEnvironmentProbe.probe(context.getEnvironmentVariables(),
+                context.getWorkingDirectory(), executable, sbtVersion);
+
+        for (String warning : probe.getWarnings()) {
+            console.printLine(warning);
+        }
+        for (String error : probe.getErrors()) {
+            console.printLine(error);
+        }
+        return probe.isValid();
+    }
+
     /**
      * Builds the SBT process to be executed
      *
      * @param environment the build environment
-     * @param config      the build configuration
+     * @param command     the command to execute
      * @return the SBT process
      */
-    private ProcessBuilder buildSbtProcess(ExecutionContext environment, ExecutionConfiguration config) {
+    private ProcessBuilder buildSbtProcess(ExecutionContext environment, List<String> command) {
 
         final Map<String, String> env = environment.getEnvironmentVariables();
 
-        final List<String> command = parse(config, env);
-
         logger.debug("Executing command: " + command);
 
         final ProcessBuilder builder = new ProcessBuilder(command);
@@ -102,9 +438,9 @@ public class SbtTaskExecutor implements TaskExecutor {
      *
      * @param config the task configuration
      * @param env    the task environment
-     * @return the command to execute
+     * @return the config parser
      */
-    private List<String> parse(ExecutionConfiguration config, Map<String, String> env) {
+    private SbtTaskConfigParser parse(ExecutionConfiguration config, Map<String, String> env) {
 
         return SbtTaskConfigParser.fromConfig(config)
                 .withEnvironment(env)
@@ -112,18 +448,132 @@ public class SbtTaskExecutor implements TaskExecutor {
                 .withSbtVersion(SbtTaskConfig.SBT_VERSION.getName())
                 .withTasks(SbtTaskConfig.TASKS.getName())
                 .withAdditionalOptions(SbtTaskConfig.ADDITIONAL_OPTIONS.getName())
-                .build();
+                .withStages(SbtTaskConfig.STAGES.getName())
+                .withCompilerProfile(SbtTaskConfig.COMPILER_PROFILE.getName());
     }
 
-    private int execute(ProcessBuilder builder, JobConsoleLogger console) throws IOException, InterruptedException {
+    /**
+     * Executes the stages concurrently, each in a separate SBT process sharing the already compiled project.
+     *
+     * @param context the build context
+     * @param stages  the stage commands mapped by the stage name
+     * @param console the job console
+     * @param output  the build output
+     * @return the names of the failed stages
+     * @throws InterruptedException if the build has been interrupted
+     */
+    private List<String> executeStages(ExecutionContext context, Map<String, List<String>> stages,
+                                       final JobConsoleLogger console, final SbtBuildOutput output)
+            throws InterruptedException {
+
+        final List<String> failed = new ArrayList<String>();
+        if (stages.isEmpty()) {
+            return failed;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(stages.size());
+        try {
+            final Map<String, Future<Integer>> results = new LinkedHashMap<String, Future<Integer>>();
+            for (Map.Entry<String, List<String>> stage : stages.entrySet()) {
+                final String name = stage.getKey();
+                final ProcessBuilder sbt = buildSbtProcess(context, stage.getValue());
+                results.put(name, executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return executeStage(name, sbt, console, output);
+                    }
+                }));
+            }
+
+            for (Map.Entry<String, Future<Integer>> result : results.entrySet()) {
+                if (!isSuccess(getStageResult(result.getKey(), result.getValue(), console))) {
+                    failed.add(result.getKey());
+                }
+            }
+            return failed;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Executes single stage and reports its result to the job console.
+     *
+     * @param name    the stage name
+     * @param builder the stage process
+     * @param console the job console
+     * @param output  the build output
+     * @return the stage exit code
+     * @throws IOException          if the process could not be started
+     * @throws InterruptedException if the build has been interrupted
+     */
+    private int executeStage(String name, ProcessBuilder builder, JobConsoleLogger console, SbtBuildOutput output)
+            throws IOException, InterruptedException {
+
+        final long start = System.nanoTime();
 
+        final int result = execute(builder, name, output);
+
+        console.printLine(String.format("Stage %s finished with exit code %d in %d s", name, result,
+                TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)));
+        return result;
+    }
+
+    /**
+     * Waits for the stage to complete.
+     *
+     * @param name    the stage name
+     * @param result  the stage result
+     * @param console the job console
+     * @return the stage exit code, or -1 if the stage could not be executed
+     * @throws InterruptedException if the build has been interrupted
+     */
+    private int getStageResult(String name, Future<Integer> result, JobConsoleLogger console)
+            throws InterruptedException {
+
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            logger.error("Stage " + name + " failed with error", e.getCause());
+
+            console.printLine(String.format("Stage %s failed with error: %s", name, e.getCause().getMessage()));
+            return -1;
+        }
+    }
+
+    /**
+     * Executes the SBT process and passes its output to the listeners.
+     *
+     * @param builder the SBT process
+     * @param stage   the stage name, or null for the tasks
+     * @param output  the build output
+     * @return the process exit code
+     * @throws IOException          if the process could not be started
+     * @throws InterruptedException if the build has been interrupted
+     */
+    private int execute(ProcessBuilder builder, String stage, SbtBuildOutput output)
+            throws IOException, InterruptedException {
+
+        final List<SbtOutputListener> listeners = output.forProcess();
         Process process = null;
         try {
             process = builder.start();
 
-            console.readOutputOf(process.getInputStream());
-            console.readErrorOf(process.getErrorStream());
-            return process.waitFor();
+            for (SbtOutputListener listener : listeners) {
+                listener.onStart(stage);
+            }
+            final Thread reader = new SbtOutputReader(process.getInputStream(), stage, listeners).start();
+            final Thread error = output.readErrorOf(process.getErrorStream(), stage, listeners);
+            final int result = process.waitFor();
+            reader.join();
+            if (error != null) {
+                error.join();
+            }
+
+            for (SbtOutputListener listener : listeners) {
+                listener.onComplete(stage);
+            }
+            return result;
         } finally {
             if (process != null) {
                 process.destroy();
@@ -19,7 +19,10 @@ import io.jmnarloch.cd.go.plugin.api.validation.AbstractTaskValidator;
 import io.jmnarloch.cd.go.plugin.api.validation.ValidationErrors;
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 /**
  * The SBT task validator.
@@ -28,6 +31,11 @@ import java.util.Map;
  */
 public class SbtTaskValidator extends AbstractTaskValidator {
 
+    /**
+     * The SBT version pattern.
+     */
+    private static final Pattern SBT_VERSION = Pattern.compile("^\\d+\\.\\d+\\.\\d+([.-][\\w.-]+)?$");
+
     /**
      * {@inheritDoc}
      */
@@ -35,6 +43,14 @@ public class SbtTaskValidator extends AbstractTaskValidator {
     public void validate(Map<String, Object> properties, ValidationErrors errors) {
 
         rejectIfEmpty(errors, properties, SbtTaskConfig.TASKS.getName(), "You need to specify SBT tasks");
+        rejectIfNotMatching(errors, properties, SbtTaskConfig.SBT_VERSION.getName(), SBT_VERSION,
+                "The SBT version has to be in form of major.minor.patch, for instance 0.13.9");
+        rejectIfDuplicateStages(errors, properties, SbtTaskConfig.STAGES.getName(),
+                "The stage names have to be unique");
+        rejectIfInTarget(errors, properties, SbtTaskConfig.LOG_FILE.getName(),
+                "The log file can not be written to the target directory, which is removed by the clean task");
+        rejectIfInTarget(errors, properties, SbtTaskConfig.EVENT_FILE.getName(),
+                "The event file can not be written to the target directory, which is removed by the clean task");
     }
 
     /**
@@ -50,4 +66,56 @@ public class SbtTaskValidator extends AbstractTaskValidator {
             errors.addError(property, message);
         }
     }
+
+    /**
+     * Registers an error if property is specified and does not match the pattern.
+     *
+     * @param errors     the validation errors
+     * @param properties the properties map
+     * @param property   the property name
+     * @param pattern    the pattern
+     * @param message    the message
+     */
+    private void rejectIfNotMatching(ValidationErrors errors, Map<String, Object> properties, String property,
+                                     Pattern pattern, String message) {
+        final String value = getProperty(properties, property);
+        if (!StringUtils.isBlank(value) && !pattern.matcher(value.trim()).matches()) {
+            errors.addError(property, message);
+        }
+    }
+
+    /**
+     * Registers an error if the same stage name has been used more than once.
+     *
+     * @param errors     the validation errors
+     * @param properties the properties map
+     * @param property   the property name
+     * @param message    the message
+     */
+    private void rejectIfDuplicateStages(ValidationErrors errors, Map<String, Object> properties, String property,
+                                         String message) {
+        final Set<String> names = new HashSet<String>();
+        for (SbtStage stage : SbtStage.parse(getProperty(properties, property))) {
+            if (!names.add(stage.getName())) {
+                errors.addError(property, message);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Registers an error if the file is in the SBT target directory.
+     *
+     * @param errors     the validation errors
+     * @param properties the properties map
+     * @param property   the property name
+     * @param message    the message
+     */
+    private void rejectIfInTarget(ValidationErrors errors, Map<String, Object> properties, String property,
+                                  String message) {
+        final String value = getProperty(properties, property);
+        if (!StringUtils.isBlank(value) && SbtTarget.contains(value.trim())) {
+            errors.addError(property, message);
+        }
+    }
 }
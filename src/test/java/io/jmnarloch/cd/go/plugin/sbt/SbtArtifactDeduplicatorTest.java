@@ -0,0 +1,209 @@
+/**
+ * Copyright (c) 2015 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jmnarloch.cd.go.plugin.sbt;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link SbtArtifactDeduplicator} class.
+ *
+ * @author Jakub Narloch
+ */
+public class SbtArtifactDeduplicatorTest {
+
+    /**
+     * The size of the deduplicated artifacts.
+     */
+    private static final int SIZE = 100 * 1024;
+
+    /**
+     * The deduplicated artifacts of both the root project and the subprojects.
+     */
+    private static final List<String> PATTERNS = Arrays.asList("target/**.jar", "**/target/**.jar");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * The content store.
+     */
+    private Path store;
+
+    /**
+     * The artifact content.
+     */
+    private byte[] content;
+
+    /**
+     * Sets up the tests environment.
+     *
+     * @throws Exception if any error occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+
+        store = temporaryFolder.newFolder("store").toPath();
+        content = new byte[SIZE];
+        new Random(0).nextBytes(content);
+    }
+
+    @Test
+    public void shouldLinkIntoExistingEntry() throws Exception {
+
+        // given
+        final Path first = createArtifact("first", "target/scala-2.11/app.jar", content);
+        final Path second = createArtifact("second", "core/target/scala-2.11/core.jar", content);
+        deduplicate("first");
+
+        // when
+        final SbtArtifactDeduplicator.Result result = deduplicate("second");
+
+        // then
+        assertEquals(1, result.getFiles());
+        assertEquals(SIZE, result.getSaved());
+        assertFalse(Files.getPosixFilePermissions(second).contains(PosixFilePermission.OWNER_WRITE));
+        assertFalse(Files.getPosixFilePermissions(second).contains(PosixFilePermission.OTHERS_WRITE));
+        assertTrue(Files.isSameFile(first, second));
+        assertArrayEquals(content, Files.readAllBytes(second));
+    }
+
+    @Test
+    public void shouldDeduplicateWithinWorkspace() throws Exception {
+
+        // given
+        final Path app = createArtifact("workspace", "target/scala-2.11/app.jar", content);
+        final Path core = createArtifact("workspace", "core/target/scala-2.11/core.jar", content);
+        createArtifact("workspace", "core/target/scala-2.11/core.txt", content);
+        createArtifact("workspace", "core/target/scala-2.11/small.jar", new byte[1024]);
+
+        // when
+        final SbtArtifactDeduplicator.Result result = deduplicate("workspace");
+
+        // then
+        assertEquals(2, result.getFiles());
+        assertEquals(SIZE, result.getSaved());
+        assertTrue(Files.isSameFile(app, core));
+    }
+
+    @Test
+    public void shouldRestoreDeduplicatedFiles() throws Exception {
+
+        // given
+        final Path first = createArtifact("first", "target/app.jar", content);
+        final Path second = createArtifact("second", "target/app.jar", content);
+        deduplicate("first");
+        deduplicate("second");
+        final long modified = Files.getLastModifiedTime(second).toMillis();
+
+        // when
+        final int restored = SbtArtifactDeduplicator.restore(workspace("second"));
+
+        // then
+        assertEquals(1, restored);
+        assertFalse(Files.isSameFile(first, second));
+        assertEquals(modified, Files.getLastModifiedTime(second).toMillis());
+        assertTrue(Files.getPosixFilePermissions(second).contains(PosixFilePermission.OWNER_WRITE));
+        assertArrayEquals(content, Files.readAllBytes(second));
+        assertFalse(Files.exists(workspace("second").resolve(".sbt-dedup")));
+        assertEquals(0, SbtArtifactDeduplicator.restore(workspace("second")));
+    }
+
+    @Test
+    public void shouldRestoreFilesOnceDeduplicationIsDisabled() throws Exception {
+
+        // given
+        final Path first = createArtifact("first", "target/app.jar", content);
+        final Path second = createArtifact("second", "target/app.jar", content);
+        deduplicate("first");
+        deduplicate("second");
+
+        // when
+        SbtArtifactDeduplicator.restore(workspace("second"));
+        Files.write(second, new byte[]{1, 2, 3}, StandardOpenOption.TRUNCATE_EXISTING);
+
+        // then
+        assertArrayEquals(content, Files.readAllBytes(first));
+        assertEquals(3, Files.size(second));
+    }
+
+    @Test
+    public void shouldNotLinkModifiedEntry() throws Exception {
+
+        // given
+        final Path first = createArtifact("first", "target/app.jar", content);
+        final Path second = createArtifact("second", "target/app.jar", content);
+        deduplicate("first");
+        final byte[] modified = content.clone();
+        modified[0]++;
+        assertTrue(first.toFile().setWritable(true));
+        Files.write(first, modified, StandardOpenOption.WRITE);
+
+        // when
+        final SbtArtifactDeduplicator.Result result = deduplicate("second");
+
+        // then
+        assertEquals(1, result.getFiles());
+        assertEquals(0, result.getSaved());
+        assertFalse(Files.isSameFile(first, second));
+        assertArrayEquals(content, Files.readAllBytes(second));
+    }
+
+    @Test
+    public void shouldListFilesInManifest() throws Exception {
+
+        // given
+        createArtifact("workspace", "target/app.jar", content);
+        createArtifact("workspace", "core/target/core.jar", content);
+
+        // when
+        deduplicate("workspace");
+
+        // then
+        final List<String> manifest = Files.readAllLines(workspace("workspace").resolve(".sbt-dedup"),
+                StandardCharsets.UTF_8);
+        assertEquals(2, manifest.size());
+        assertTrue(manifest.contains("target/app.jar".replace('/', File.separatorChar)));
+    }
+
+    private SbtArtifactDeduplicator.Result deduplicate(String workspace) throws Exception {
+        return new SbtArtifactDeduplicator(store, workspace(workspace), PATTERNS).deduplicate();
+    }
+
+    private Path workspace(String name) {
+        return temporaryFolder.getRoot().toPath().resolve(name);
+    }
+
+    private Path createArtifact(String workspace, String name, byte[] content) throws Exception {
+        final Path artifact = workspace(workspace).resolve(name);
+        Files.createDirectories(artifact.getParent());
+        return Files.write(artifact, content);
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2015 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jmnarloch.cd.go.plugin.sbt;
+
+import com.google.gson.Gson;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link SbtCompilerProfiler} class.
+ *
+ * @author Jakub Narloch
+ */
+public class SbtCompilerProfilerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Instance of the tested class.
+     */
+    private SbtCompilerProfiler instance;
+
+    /**
+     * Sets up the tests environment.
+     *
+     * @throws Exception if any error occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+
+        instance = new SbtCompilerProfiler();
+    }
+
+    @Test
+    public void shouldProfileSbt013Output() throws Exception {
+
+        // given
+        instance.onLine(null, "[info] Compiling 3 Scala sources to /app/core/target/scala-2.11/classes...");
+        instance.onLine(null, "[info] [parser in 12ms]");
+        instance.onLine(null, "[info] [typer in 340ms]");
+        instance.onLine(null, "[info] [total in 800ms]");
+        instance.onLine(null, "[info] Compiling 1 Scala source to /app/api/target/scala-2.11/classes...");
+        instance.onLine(null, "[info] [typer in 20ms]");
+        instance.onComplete(null);
+
+        // when
+        final Map<String, Object> report = writeReport();
+
+        // then
+        final List<Map<String, Object>> projects = getList(report, "projects");
+        assertEquals(2, projects.size());
+        assertEquals("core", projects.get(0).get("name"));
+        assertEquals(3.0, projects.get(0).get("sources"));
+        assertEquals(352.0, projects.get(0).get("totalMs"));
+        assertEquals(340.0, ((Map<?, ?>) projects.get(0).get("phases")).get("typer"));
+        assertFalse(((Map<?, ?>) projects.get(0).get("phases")).containsKey("total"));
+        assertEquals("api", projects.get(1).get("name"));
+
+        final List<Map<String, Object>> slowest = getList(report, "slowestPhases");
+        assertEquals(3, slowest.size());
+        assertEquals("core", slowest.get(0).get("project"));
+        assertEquals("typer", slowest.get(0).get("phase"));
+        assertEquals(340.0, slowest.get(0).get("ms"));
+    }
+
+    @Test
+    public void shouldProfileSbt1Output() throws Exception {
+
+        // given
+        instance.onLine("test", "[info] compiling 2 Scala sources to /app/core/target/scala-2.12/test-classes ...");
+        instance.onLine("test", "[info] [typer in 150ms]");
+        instance.onLine("test", "[info] [jvm in 75ms]");
+        instance.onLine("test", "[info] done compiling");
+        instance.onComplete("test");
+
+        // when
+        final Map<String, Object> report = writeReport();
+
+        // then
+        final List<Map<String, Object>> projects = getList(report, "projects");
+        assertEquals(1, projects.size());
+        assertEquals("core / Test", projects.get(0).get("name"));
+        assertEquals(2.0, projects.get(0).get("sources"));
+        assertEquals(225.0, projects.get(0).get("totalMs"));
+    }
+
+    @Test
+    public void shouldAttributeTimingsPerStage() throws Exception {
+
+        // given
+        instance.onLine("test", "[info] compiling 1 Scala source to /app/core/target/scala-2.12/test-classes ...");
+        instance.onLine("it", "[info] compiling 1 Scala source to /app/it/target/scala-2.12/classes ...");
+        instance.onLine("test", "[info] [typer in 10ms]");
+        instance.onLine("it", "[info] [typer in 30ms]");
+        instance.onComplete("test");
+        instance.onComplete("it");
+        instance.onLine(null, "[info] [typer in 5ms]");
+
+        // when
+        final Map<String, Object> report = writeReport();
+
+        // then
+        final List<Map<String, Object>> projects = getList(report, "projects");
+        assertEquals(3, projects.size());
+        assertEquals("it", projects.get(0).get("name"));
+        assertEquals(30.0, projects.get(0).get("totalMs"));
+        assertEquals("core / Test", projects.get(1).get("name"));
+        assertEquals(10.0, projects.get(1).get("totalMs"));
+        assertEquals("unknown", projects.get(2).get("name"));
+    }
+
+    @Test
+    public void shouldWriteEmptyReport() throws Exception {
+
+        // given
+        instance.onLine(null, "[success] Total time: 1 s, completed Oct 19, 2015 10:00:00 AM");
+
+        // when
+        final Map<String, Object> report = writeReport();
+
+        // then
+        assertTrue(getList(report, "projects").isEmpty());
+        assertTrue(getList(report, "slowestPhases").isEmpty());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> writeReport() throws Exception {
+        final Path path = temporaryFolder.getRoot().toPath().resolve("reports/compiler-profile.json");
+        instance.write(path);
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return new Gson().fromJson(reader, Map.class);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> getList(Map<String, Object> report, String name) {
+        return (List<Map<String, Object>>) report.get(name);
+    }
+}
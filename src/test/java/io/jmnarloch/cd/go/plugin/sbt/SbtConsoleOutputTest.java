@@ -0,0 +1,50 @@
+/**
+ * Copyright (c) 2015 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jmnarloch.cd.go.plugin.sbt;
+
+import com.thoughtworks.go.plugin.api.task.JobConsoleLogger;
+import org.junit.Test;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the {@link SbtConsoleOutput} class.
+ *
+ * @author Jakub Narloch
+ */
+public class SbtConsoleOutputTest {
+
+    @Test
+    public void shouldPrintColoredProblemsOnlyOnce() {
+
+        // given
+        final JobConsoleLogger console = mock(JobConsoleLogger.class);
+        final SbtConsoleOutput output = new SbtConsoleOutput(console, 10);
+        final String error = "\u001B[0m[\u001B[0m\u001B[31merror\u001B[0m] \u001B[0mnot found: value x\u001B[0m";
+
+        // when
+        output.onLine(null, "[info] Compiling 1 Scala source");
+        output.onLine(null, error);
+        output.onLine(null, "[success] Total time: 3 s");
+        output.onComplete(null);
+
+        // then
+        verify(console, times(1)).printLine(error);
+        verify(console).printLine("Last 2 lines of the tasks output:");
+        verify(console).printLine("[info] Compiling 1 Scala source");
+        verify(console).printLine("[success] Total time: 3 s");
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright (c) 2015 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jmnarloch.cd.go.plugin.sbt;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link SbtEnvironmentProbe} class.
+ *
+ * @author Jakub Narloch
+ */
+public class SbtEnvironmentProbeTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * The build environment.
+     */
+    private Map<String, String> environment;
+
+    /**
+     * The build working directory.
+     */
+    private File workingDirectory;
+
+    /**
+     * Sets up the tests environment.
+     *
+     * @throws Exception if any error occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+
+        workingDirectory = temporaryFolder.newFolder("project");
+        final File sbt = new File(workingDirectory, "sbt");
+        assertTrue(sbt.createNewFile());
+        assertTrue(sbt.setExecutable(true));
+
+        environment = new HashMap<>();
+        environment.put("os.name", "Linux");
+        environment.put("user.home", temporaryFolder.newFolder("home").getAbsolutePath());
+        environment.put("PATH", "");
+    }
+
+    @Test
+    public void shouldAcceptSupportedJavaVersion() throws Exception {
+
+        // given
+        withJava("17.0.2");
+
+        // when
+        final SbtEnvironmentProbe.Result result = probe("1.9.7");
+
+        // then
+        assertTrue(result.isValid());
+        assertEquals(1, result.getWarnings().size());
+    }
+
+    @Test
+    public void shouldNotResolveBareExecutableAgainstWorkingDirectory() throws Exception {
+
+        // given
+        withJava("1.8.0_372");
+
+        // when
+        final SbtEnvironmentProbe.Result result = SbtEnvironmentProbe.probe(environment,
+                workingDirectory.getAbsolutePath(), "sbt", "0.13.9");
+
+        // then
+        assertFalse(result.isValid());
+        assertTrue(result.getErrors().get(0).contains("could not be found on PATH"));
+    }
+
+    @Test
+    public void shouldRejectMissingExecutable() throws Exception {
+
+        // given
+        withJava("1.8.0_372");
+
+        // when
+        final SbtEnvironmentProbe.Result result = SbtEnvironmentProbe.probe(environment,
+                workingDirectory.getAbsolutePath(), "missing/sbt", "0.13.9");
+
+        // then
+        assertFalse(result.isValid());
+        assertTrue(result.getErrors().get(0).contains("could not be found"));
+    }
+
+    @Test
+    public void shouldRejectMissingJava() throws Exception {
+
+        // given
+        environment.put("JAVA_HOME", temporaryFolder.newFolder("jdk").getAbsolutePath());
+
+        // when
+        final SbtEnvironmentProbe.Result result = probe("0.13.9");
+
+        // then
+        assertFalse(result.isValid());
+        assertTrue(result.getErrors().get(0).contains("java executable could not be found"));
+    }
+
+    @Test
+    public void shouldRequireJava8ForSbt1() throws Exception {
+
+        // given
+        withJava("1.7.0_80");
+
+        // when
+        final SbtEnvironmentProbe.Result result = probe("1.0.0");
+
+        // then
+        assertFalse(result.isValid());
+        assertEquals("SBT 1.0.0 requires at least Java 8, found Java 7", result.getErrors().get(0));
+    }
+
+    @Test
+    public void shouldRejectNewerJavaVersion() throws Exception {
+
+        // given
+        withJava("11.0.21");
+
+        // when
+        final SbtEnvironmentProbe.Result result = probe("1.0.4");
+
+        // then
+        assertFalse(result.isValid());
+        assertEquals("SBT 1.0.4 does not support Java 11, use at least SBT 1.1.0 or an older JDK",
+                result.getErrors().get(0));
+    }
+
+    @Test
+    public void shouldVerifyProjectSbtVersion() throws Exception {
+
+        // given
+        withJava("17.0.2");
+        withBuildProperties("0.13.9");
+
+        // when
+        final SbtEnvironmentProbe.Result result = probe(null);
+
+        // then
+        assertFalse(result.isValid());
+        assertEquals("SBT 0.13.9 does not support Java 17, use at least SBT 1.5.5 or an older JDK",
+                result.getErrors().get(0));
+    }
+
+    @Test
+    public void shouldPreferRequestedSbtVersion() throws Exception {
+
+        // given
+        withJava("17.0.2");
+        withBuildProperties("0.13.9");
+
+        // when
+        final SbtEnvironmentProbe.Result result = probe("1.5.5");
+
+        // then
+        assertTrue(result.isValid());
+    }
+
+    @Test
+    public void shouldNotWarnIfSbtHasBeenBooted() throws Exception {
+
+        // given
+        withJava("1.8.0_372");
+        assertTrue(new File(environment.get("user.home"), ".sbt/boot/scala-2.10.4/org.scala-sbt/sbt/0.13.9").mkdirs());
+
+        // when
+        final SbtEnvironmentProbe.Result result = probe("0.13.9");
+
+        // then
+        assertTrue(result.isValid());
+        assertTrue(result.getWarnings().isEmpty());
+    }
+
+    private SbtEnvironmentProbe.Result probe(String sbtVersion) {
+        return SbtEnvironmentProbe.probe(environment, workingDirectory.getAbsolutePath(),
+                new File(workingDirectory, "sbt").getAbsolutePath(), sbtVersion);
+    }
+
+    private void withJava(String version) throws Exception {
+        final File javaHome = temporaryFolder.newFolder("jdk-" + version);
+        final File java = new File(javaHome, "bin/java");
+        assertTrue(java.getParentFile().mkdirs());
+        assertTrue(java.createNewFile());
+        Files.write(new File(javaHome, "release").toPath(),
+                Collections.singletonList("JAVA_VERSION=\"" + version + "\""), StandardCharsets.UTF_8);
+        environment.put("JAVA_HOME", javaHome.getAbsolutePath());
+    }
+
+    private void withBuildProperties(String sbtVersion) throws Exception {
+        final Path buildProperties = workingDirectory.toPath().resolve("project/build.properties");
+        Files.createDirectories(buildProperties.getParent());
+        Files.write(buildProperties, Collections.singletonList("sbt.version = " + sbtVersion),
+                StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,255 @@
+/**
+ * Copyright (c) 2015 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jmnarloch.cd.go.plugin.sbt;
+
+import com.google.gson.Gson;
+import io.jmnarloch.cd.go.plugin.api.executor.ExecutionConfiguration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link SbtEventWriter} class.
+ *
+ * @author Jakub Narloch
+ */
+public class SbtEventWriterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldWriteSbt013Events() throws Exception {
+
+        // given
+        final Map<String, List<String>> tasksByStage = new LinkedHashMap<>();
+        tasksByStage.put(null, Arrays.asList("compile", "test"));
+
+        // when
+        final List<Map<String, Object>> events = writeEvents(tasksByStage, null,
+                "[info] Loading project definition from /app/project",
+                "[info] Updating {file:/app/}app...",
+                "[info] Resolving org.scala-lang:scala-library:2.11.7 ...",
+                "[info] Done updating.",
+                "[info] Compiling 1 Scala source to /app/target/scala-2.11/classes...",
+                "[warn] /app/src/main/scala/Main.scala:3: method x in object Main is deprecated",
+                "[success] Total time: 5 s, completed Oct 19, 2015 10:00:00 AM",
+                "[info] MainSpec:",
+                "[info] - should add numbers",
+                "[info] - should subtract numbers *** FAILED ***",
+                "[info] - should multiply numbers (pending)",
+                "[info] - should divide numbers !!! IGNORED !!!",
+                "[info] - should compare numbers !!! CANCELED !!!",
+                "[info] Passed: Total 2, Failed 1, Errors 0, Passed 1",
+                "[error] Failed: Total 2, Failed 1, Errors 0, Passed 1",
+                "[error] Total time: 2 s, completed Oct 19, 2015 10:00:02 AM");
+
+        // then
+        assertEquals(Arrays.asList("taskStarted", "updating", "resolving", "updated", "problem", "taskFinished",
+                "taskStarted", "test", "test", "test", "test", "test", "testSummary", "testSummary", "taskFinished"),
+                getTypes(events));
+
+        assertEquals("compile", events.get(0).get("task"));
+        assertEquals("{file:/app/}app", events.get(1).get("project"));
+        assertEquals("org.scala-lang:scala-library:2.11.7", events.get(2).get("module"));
+
+        final Map<String, Object> problem = events.get(4);
+        assertEquals("warn", problem.get("severity"));
+        assertEquals("/app/src/main/scala/Main.scala", problem.get("file"));
+        assertEquals(3.0, problem.get("line"));
+        assertFalse(problem.containsKey("column"));
+        assertEquals("method x in object Main is deprecated", problem.get("message"));
+
+        assertEquals("compile", events.get(5).get("task"));
+        assertEquals(true, events.get(5).get("success"));
+        assertEquals(5.0, events.get(5).get("reportedSeconds"));
+        assertEquals("test", events.get(6).get("task"));
+
+        assertTest(events.get(7), "should add numbers", "passed");
+        assertTest(events.get(8), "should subtract numbers", "failed");
+        assertTest(events.get(9), "should multiply numbers", "pending");
+        assertTest(events.get(10), "should divide numbers", "ignored");
+        assertTest(events.get(11), "should compare numbers", "canceled");
+
+        assertEquals(2.0, events.get(12).get("total"));
+        assertEquals(1.0, events.get(12).get("failed"));
+        assertEquals("test", events.get(14).get("task"));
+        assertEquals(false, events.get(14).get("success"));
+    }
+
+    @Test
+    public void shouldWriteSbt1Events() throws Exception {
+
+        // given
+        final Map<String, List<String>> tasksByStage = new LinkedHashMap<>();
+        tasksByStage.put(null, Arrays.asList("compile"));
+        tasksByStage.put("test", Arrays.asList("clean", "test"));
+
+        // when
+        final List<Map<String, Object>> events = writeEvents(tasksByStage, "test",
+                "\u001B[0m[\u001B[0m\u001B[0minfo\u001B[0m] \u001B[0m\u001B[0mwelcome to sbt 1.9.7\u001B[0m",
+                "[success] Total time: 0 s, completed Oct 19, 2026, 10:00:00 AM",
+                "[info] compiling 2 Scala sources to /app/target/scala-2.13/classes ...",
+                "[error] /app/src/main/scala/Main.scala:12:5: not found: value x",
+                "[error]     x",
+                "[error]     ^",
+                "[info] MainSpec:",
+                "[info] Main",
+                "[info]   - should add numbers (12 milliseconds)",
+                "[info]   - should subtract numbers *** FAILED *** (1 second, 5 milliseconds)",
+                "[info] Passed: Total 2, Failed 1, Errors 0, Passed 1",
+                "[error] (Compile / compileIncremental) Compilation failed",
+                "[error] Total time: 3 s, completed Oct 19, 2026, 10:00:03 AM");
+
+        // then
+        assertEquals(Arrays.asList("taskStarted", "taskFinished", "taskStarted", "problem", "test", "test",
+                "testSummary", "taskFinished"), getTypes(events));
+        for (Map<String, Object> event : events) {
+            assertEquals("test", event.get("stage"));
+        }
+        assertEquals("clean", events.get(0).get("task"));
+        assertEquals("clean", events.get(1).get("task"));
+
+        final Map<String, Object> problem = events.get(3);
+        assertEquals("error", problem.get("severity"));
+        assertEquals(12.0, problem.get("line"));
+        assertEquals(5.0, problem.get("column"));
+        assertEquals("not found: value x", problem.get("message"));
+
+        assertTest(events.get(4), "should add numbers", "passed");
+        assertTest(events.get(5), "should subtract numbers", "failed");
+        assertEquals("test", events.get(7).get("task"));
+        assertEquals(false, events.get(7).get("success"));
+    }
+
+    @Test
+    public void shouldStartFirstTaskWithProcess() throws Exception {
+
+        // given
+        final Path path = temporaryFolder.getRoot().toPath().resolve("logs/sbt-events.ndjson");
+        final Map<String, List<String>> tasksByStage = new LinkedHashMap<>();
+        tasksByStage.put(null, Arrays.asList("compile"));
+        final SbtEventWriter instance = SbtEventWriter.open(path, tasksByStage);
+
+        // when
+        instance.onStart(null);
+        Thread.sleep(50);
+        instance.onLine(null, "[success] Total time: 0 s, completed Oct 19, 2026, 10:00:00 AM");
+        instance.onComplete(null);
+        instance.close();
+
+        // then
+        final List<Map<String, Object>> events = readEvents(path);
+        assertEquals(Arrays.asList("taskStarted", "taskFinished"), getTypes(events));
+        assertTrue(((Number) events.get(1).get("durationMs")).longValue() >= 50);
+    }
+
+    @Test
+    public void shouldEscapeJson() throws Exception {
+
+        // given
+        final Map<String, List<String>> tasksByStage = new LinkedHashMap<>();
+        tasksByStage.put(null, Arrays.asList("compile"));
+
+        // when
+        final List<Map<String, Object>> events = writeEvents(tasksByStage, null,
+                "[error] C:\\app\\Main.scala:1:1: expected \"}\"\tbut found\u0001");
+
+        // then
+        assertEquals("C:\\app\\Main.scala", events.get(1).get("file"));
+        assertEquals("expected \"}\"\tbut found\u0001", events.get(1).get("message"));
+    }
+
+    @Test
+    public void shouldNameTasksAfterCrossBuildCommand() throws Exception {
+
+        // given
+        final Map<String, Object> config = new HashMap<>();
+        config.put(SbtTaskConfig.TASKS.getName(), Collections.singletonMap("value", "compile test"));
+        config.put(SbtTaskConfig.ADDITIONAL_OPTIONS.getName(), Collections.singletonMap("value", "++2.12.1"));
+        final Map<String, List<String>> tasksByStage = SbtTaskConfigParser
+                .fromConfig(new ExecutionConfiguration(config))
+                .withTasks(SbtTaskConfig.TASKS.getName())
+                .withAdditionalOptions(SbtTaskConfig.ADDITIONAL_OPTIONS.getName())
+                .getTasksByStage();
+
+        // when
+        final List<Map<String, Object>> events = writeEvents(tasksByStage, null,
+                "[info] Setting Scala version to 2.12.1 on 1 projects.",
+                "[info] Compiling 1 Scala source to /app/target/scala-2.12/classes...",
+                "[success] Total time: 5 s, completed Oct 19, 2015 10:00:00 AM",
+                "[info] Passed: Total 1, Failed 0, Errors 0, Passed 1",
+                "[success] Total time: 2 s, completed Oct 19, 2015 10:00:02 AM");
+
+        // then
+        assertEquals(Arrays.asList("taskStarted", "taskFinished", "taskStarted", "testSummary", "taskFinished"),
+                getTypes(events));
+        assertEquals("compile", events.get(1).get("task"));
+        assertEquals("test", events.get(4).get("task"));
+    }
+
+    private List<Map<String, Object>> writeEvents(Map<String, List<String>> tasksByStage, String stage,
+                                                  String... lines) throws Exception {
+        final Path path = temporaryFolder.getRoot().toPath().resolve("sbt-events.ndjson");
+        final SbtEventWriter instance = SbtEventWriter.open(path, tasksByStage);
+        instance.onStart(stage);
+        for (String line : lines) {
+            instance.onLine(stage, line);
+        }
+        instance.onComplete(stage);
+        instance.close();
+        return readEvents(path);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> readEvents(Path path) throws Exception {
+        final Gson gson = new Gson();
+        final List<Map<String, Object>> events = new ArrayList<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            final Map<String, Object> event = gson.fromJson(line, Map.class);
+            assertTrue(event.containsKey("timestamp"));
+            events.add(event);
+        }
+        return events;
+    }
+
+    private List<Object> getTypes(List<Map<String, Object>> events) {
+        final List<Object> types = new ArrayList<>();
+        for (Map<String, Object> event : events) {
+            types.add(event.get("type"));
+        }
+        return types;
+    }
+
+    private void assertTest(Map<String, Object> event, String test, String status) {
+        assertEquals("test", event.get("type"));
+        assertEquals(test, event.get("test"));
+        assertEquals(status, event.get("status"));
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2015 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jmnarloch.cd.go.plugin.sbt;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the {@link SbtLogLevel} class.
+ *
+ * @author Jakub Narloch
+ */
+public class SbtLogLevelTest {
+
+    @Test
+    public void shouldClassifyPlainLines() {
+
+        // then
+        assertEquals(SbtLogLevel.ERROR, SbtLogLevel.of("[error] Main.scala:1:1: not found: value x"));
+        assertEquals(SbtLogLevel.WARN, SbtLogLevel.of("[warn] there was one deprecation warning"));
+        assertEquals(SbtLogLevel.SUCCESS, SbtLogLevel.of("[success] Total time: 3 s"));
+        assertEquals(SbtLogLevel.NONE, SbtLogLevel.of("- should compile"));
+        assertEquals(SbtLogLevel.NONE, SbtLogLevel.of(""));
+    }
+
+    @Test
+    public void shouldClassifyColoredLines() {
+
+        // given
+        final String error = "\u001B[0m[\u001B[0m\u001B[31merror\u001B[0m] "
+                + "\u001B[0m\u001B[0mnot found: value x\u001B[0m";
+        final String warning = "\u001B[0m[\u001B[0m\u001B[33mwarn\u001B[0m] \u001B[0mdeprecated\u001B[0m";
+        final String info = "\u001B[0m[\u001B[0m\u001B[0minfo\u001B[0m] \u001B[0mwelcome\u001B[0m";
+
+        // then
+        assertEquals(SbtLogLevel.ERROR, SbtLogLevel.of(error));
+        assertEquals(SbtLogLevel.WARN, SbtLogLevel.of(warning));
+        assertEquals(SbtLogLevel.INFO, SbtLogLevel.of(info));
+        assertEquals(SbtLogLevel.ERROR, SbtLogLevel.of("\u001B[31m[error]\u001B[0m not found: value x"));
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright (c) 2015 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jmnarloch.cd.go.plugin.sbt;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link SbtParallelismTuner} class.
+ *
+ * @author Jakub Narloch
+ */
+public class SbtParallelismTunerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * The store file.
+     */
+    private Path store;
+
+    /**
+     * Sets up the tests environment.
+     *
+     * @throws Exception if any error occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+
+        store = temporaryFolder.getRoot().toPath().resolve("tuner/parallelism.properties");
+    }
+
+    @Test
+    public void shouldTryEveryCandidateInOrder() {
+
+        // given
+        final SbtParallelismTuner instance = SbtParallelismTuner.forProject(store, "project", new FixedRandom(0.5, 0));
+
+        // when
+        final SortedSet<Integer> tried = tryCandidates(instance);
+
+        // then
+        final int processors = Runtime.getRuntime().availableProcessors();
+        assertTrue(tried.contains(processors));
+        assertTrue(tried.contains(processors * 2));
+        assertEquals(Math.max(1, processors / 2), (int) tried.first());
+    }
+
+    @Test
+    public void shouldSelectFastestCandidate() {
+
+        // given
+        final SbtParallelismTuner instance = SbtParallelismTuner.forProject(store, "project", new FixedRandom(0.5, 0));
+        final SortedSet<Integer> tried = tryCandidates(instance);
+
+        // when
+        final int selected = SbtParallelismTuner.forProject(store, "project", new FixedRandom(0.5, 0)).select();
+
+        // then
+        assertEquals((int) tried.last(), selected);
+    }
+
+    @Test
+    public void shouldExploreRandomCandidate() {
+
+        // given
+        final SbtParallelismTuner instance = SbtParallelismTuner.forProject(store, "project", new FixedRandom(0.05, 0));
+        final SortedSet<Integer> tried = tryCandidates(instance);
+
+        // when
+        final int selected = instance.select();
+
+        // then
+        assertEquals((int) tried.first(), selected);
+    }
+
+    @Test
+    public void shouldAverageBuildTime() throws Exception {
+
+        // given
+        final SbtParallelismTuner instance = SbtParallelismTuner.forProject(store, "project", new FixedRandom(0.5, 0));
+        final int candidate = instance.select();
+
+        // when
+        instance.record(candidate, 1000);
+        instance.record(candidate, 2000);
+
+        // then
+        final Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(store)) {
+            properties.load(input);
+        }
+        assertEquals(Collections.singleton("2,1300,0"), new TreeSet<Object>(properties.values()));
+        final String key = (String) properties.keys().nextElement();
+        assertTrue(key.matches("[0-9a-f]{64}\\.\\d+cpu\\..+\\." + candidate));
+    }
+
+    @Test
+    public void shouldSkipFailingCandidate() {
+
+        // given
+        final SbtParallelismTuner instance = SbtParallelismTuner.forProject(store, "project", new FixedRandom(0.5, 0));
+        final int failing = Runtime.getRuntime().availableProcessors() * 2;
+        final SortedSet<Integer> tried = new TreeSet<>();
+        int candidate;
+        while (tried.add(candidate = instance.select())) {
+            if (candidate == failing) {
+                instance.recordFailure(candidate);
+            } else {
+                instance.record(candidate, 1000);
+            }
+        }
+
+        // when
+        final int selected = instance.select();
+
+        // then
+        assertTrue(tried.contains(failing));
+        assertNotEquals(failing, selected);
+    }
+
+    @Test
+    public void shouldRetryLeastFailedCandidateIfAllFailed() {
+
+        // given
+        final SbtParallelismTuner instance = SbtParallelismTuner.forProject(store, "project", new FixedRandom(0.5, 0));
+        final SortedSet<Integer> tried = new TreeSet<>();
+        int candidate;
+        while (tried.add(candidate = instance.select())) {
+            instance.recordFailure(candidate);
+        }
+        instance.recordFailure(tried.first());
+
+        // when
+        final int selected = instance.select();
+
+        // then
+        assertEquals((int) tried.first(), candidate);
+        assertNotEquals(tried.first(), selected);
+    }
+
+    @Test
+    public void shouldTuneProjectsIndependently() {
+
+        // given
+        tryCandidates(SbtParallelismTuner.forProject(store, "project", new FixedRandom(0.5, 0)));
+
+        // when
+        final int selected = SbtParallelismTuner.forProject(store, "other", new FixedRandom(0.5, 0)).select();
+
+        // then
+        assertEquals(Math.max(1, Runtime.getRuntime().availableProcessors() / 2), selected);
+    }
+
+    /**
+     * Records every untried candidate, the builds with the highest concurrency limit are the fastest.
+     *
+     * @param instance the tuner
+     * @return the tried candidates
+     */
+    private SortedSet<Integer> tryCandidates(SbtParallelismTuner instance) {
+        final SortedSet<Integer> tried = new TreeSet<>();
+        final int processors = Runtime.getRuntime().availableProcessors();
+        int candidate;
+        while (tried.add(candidate = instance.select())) {
+            instance.record(candidate, candidate == processors * 2 ? 100 : 1000);
+        }
+        return tried;
+    }
+
+    /**
+     * The random generator returning fixed values.
+     */
+    private static class FixedRandom extends Random {
+
+        private final double nextDouble;
+
+        private final int nextInt;
+
+        FixedRandom(double nextDouble, int nextInt) {
+            this.nextDouble = nextDouble;
+            this.nextInt = nextInt;
+        }
+
+        @Override
+        public double nextDouble() {
+            return nextDouble;
+        }
+
+        @Override
+        public int nextInt(int bound) {
+            return nextInt;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2015 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jmnarloch.cd.go.plugin.sbt;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link SbtStage} class.
+ *
+ * @author Jakub Narloch
+ */
+public class SbtStageTest {
+
+    @Test
+    public void shouldParseNamedStages() {
+
+        // when
+        final List<SbtStage> stages = SbtStage.parse("test: test it:test\npackage:  package publishLocal");
+
+        // then
+        assertEquals(2, stages.size());
+        assertEquals("test", stages.get(0).getName());
+        assertEquals(Arrays.asList("test", "it:test"), stages.get(0).getTasks());
+        assertEquals("package", stages.get(1).getName());
+        assertEquals(Arrays.asList("package", "publishLocal"), stages.get(1).getTasks());
+    }
+
+    @Test
+    public void shouldNameUnnamedStageAfterTasks() {
+
+        // when
+        final List<SbtStage> stages = SbtStage.parse("test:compile doc");
+
+        // then
+        assertEquals(1, stages.size());
+        assertEquals("test:compile doc", stages.get(0).getName());
+        assertEquals(Arrays.asList("test:compile", "doc"), stages.get(0).getTasks());
+    }
+
+    @Test
+    public void shouldSkipBlankLines() {
+
+        // when
+        final List<SbtStage> stages = SbtStage.parse("\r\n  test: test  \r\n\r\n   \ndoc\n");
+
+        // then
+        assertEquals(2, stages.size());
+        assertEquals("test", stages.get(0).getName());
+        assertEquals(Arrays.asList("test"), stages.get(0).getTasks());
+        assertEquals("doc", stages.get(1).getName());
+    }
+
+    @Test
+    public void shouldParseBlankDefinition() {
+
+        // expect
+        assertTrue(SbtStage.parse(null).isEmpty());
+        assertTrue(SbtStage.parse(" \n ").isEmpty());
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2015 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jmnarloch.cd.go.plugin.sbt;
+
+import io.jmnarloch.cd.go.plugin.api.executor.ExecutionConfiguration;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link SbtTaskConfigParser} class.
+ *
+ * @author Jakub Narloch
+ */
+public class SbtTaskConfigParserTest {
+
+    @Test
+    public void shouldSplitConcurrencyLimitAcrossStages() {
+
+        // given
+        final Map<String, Object> config = new HashMap<>();
+        addConfigProperty(config, SbtTaskConfig.TASKS.getName(), "compile");
+        addConfigProperty(config, SbtTaskConfig.STAGES.getName(), "test: test\npackage: package");
+
+        // when
+        final SbtTaskConfigParser parser = SbtTaskConfigParser.fromConfig(new ExecutionConfiguration(config))
+                .withTasks(SbtTaskConfig.TASKS.getName())
+                .withStages(SbtTaskConfig.STAGES.getName())
+                .withConcurrencyLimit(8);
+        final List<String> command = parser.build();
+        final Map<String, List<String>> stages = parser.buildStages();
+
+        // then
+        assertTrue(command.get(command.size() - 3).contains("Tags.limitAll(8)"));
+        assertEquals(Arrays.asList("compile", "test:compile"), command.subList(command.size() - 2, command.size()));
+        assertEquals(2, stages.size());
+        for (List<String> stage : stages.values()) {
+            assertEquals(1, countLimits(stage));
+            assertTrue(stage.get(stage.size() - 2).contains("Tags.limitAll(4)"));
+        }
+    }
+
+    @Test
+    public void shouldNotLimitConcurrencyByDefault() {
+
+        // given
+        final Map<String, Object> config = new HashMap<>();
+        addConfigProperty(config, SbtTaskConfig.TASKS.getName(), "compile");
+        addConfigProperty(config, SbtTaskConfig.STAGES.getName(), "test");
+
+        // when
+        final SbtTaskConfigParser parser = SbtTaskConfigParser.fromConfig(new ExecutionConfiguration(config))
+                .withTasks(SbtTaskConfig.TASKS.getName())
+                .withStages(SbtTaskConfig.STAGES.getName());
+
+        // then
+        assertEquals(0, countLimits(parser.build()));
+        assertEquals(0, countLimits(parser.buildStages().get("test")));
+    }
+
+    @Test
+    public void shouldEnableCompilerProfilingPerProject() {
+
+        // given
+        final Map<String, Object> config = new HashMap<>();
+        addConfigProperty(config, SbtTaskConfig.TASKS.getName(), "compile");
+        addConfigProperty(config, SbtTaskConfig.COMPILER_PROFILE.getName(), "reports/compiler-profile.json");
+
+        // when
+        final List<String> command = SbtTaskConfigParser.fromConfig(new ExecutionConfiguration(config))
+                .withTasks(SbtTaskConfig.TASKS.getName())
+                .withCompilerProfile(SbtTaskConfig.COMPILER_PROFILE.getName())
+                .build();
+
+        // then
+        assertEquals(5, command.size());
+        assertEquals("set concurrentRestrictions in Global += Tags.limit(Tags.Compile, 1)", command.get(1));
+        assertTrue(command.get(2).startsWith("set commands in Global += Command.command(\"gocdProfileCompiler\")"));
+        assertTrue(command.get(2).contains("scalacOptions in (ref, config) += \"-verbose\""));
+        assertFalse(command.get(2).contains("ThisBuild"));
+        assertEquals("gocdProfileCompiler", command.get(3));
+        assertEquals("compile", command.get(4));
+    }
+
+    @Test
+    public void shouldNameTasksAfterAdditionalCommands() {
+
+        // given
+        final Map<String, Object> config = new HashMap<>();
+        addConfigProperty(config, SbtTaskConfig.TASKS.getName(), "compile");
+        addConfigProperty(config, SbtTaskConfig.ADDITIONAL_OPTIONS.getName(),
+                " -mem 2048 -Dfile.encoding=UTF-8 clean -v");
+        addConfigProperty(config, SbtTaskConfig.STAGES.getName(), "test: test");
+
+        // when
+        final SbtTaskConfigParser parser = SbtTaskConfigParser.fromConfig(new ExecutionConfiguration(config))
+                .withTasks(SbtTaskConfig.TASKS.getName())
+                .withAdditionalOptions(SbtTaskConfig.ADDITIONAL_OPTIONS.getName())
+                .withStages(SbtTaskConfig.STAGES.getName())
+                .withCompilerProfile(SbtTaskConfig.COMPILER_PROFILE.getName());
+        final Map<String, List<String>> tasksByStage = parser.getTasksByStage();
+
+        // then
+        assertEquals(Arrays.asList("clean", "compile", "test:compile"), tasksByStage.get(null));
+        assertEquals(Arrays.asList("clean", "test"), tasksByStage.get("test"));
+    }
+
+    @Test
+    public void shouldNotNameNonTaskCommands() {
+
+        // given
+        final Map<String, Object> config = new HashMap<>();
+        addConfigProperty(config, SbtTaskConfig.TASKS.getName(), "reload compile");
+        addConfigProperty(config, SbtTaskConfig.ADDITIONAL_OPTIONS.getName(), "-v ++2.12.1 project core");
+        addConfigProperty(config, SbtTaskConfig.STAGES.getName(), "test: ++ 2.11.12 +test");
+
+        // when
+        final SbtTaskConfigParser parser = SbtTaskConfigParser.fromConfig(new ExecutionConfiguration(config))
+                .withTasks(SbtTaskConfig.TASKS.getName())
+                .withAdditionalOptions(SbtTaskConfig.ADDITIONAL_OPTIONS.getName())
+                .withStages(SbtTaskConfig.STAGES.getName());
+        final Map<String, List<String>> tasksByStage = parser.getTasksByStage();
+
+        // then
+        assertEquals(Arrays.asList("compile", "test:compile"), tasksByStage.get(null));
+        assertEquals(Collections.emptyList(), tasksByStage.get("test"));
+    }
+
+    @Test
+    public void shouldCompileStageConfigurationsBeforeStages() {
+
+        // given
+        final Map<String, Object> config = new HashMap<>();
+        addConfigProperty(config, SbtTaskConfig.TASKS.getName(), "clean test:compile");
+        addConfigProperty(config, SbtTaskConfig.STAGES.getName(),
+                "unit: test\nintegration: it:test core/it:testOnly\npackage: package");
+
+        // when
+        final SbtTaskConfigParser parser = SbtTaskConfigParser.fromConfig(new ExecutionConfiguration(config))
+                .withTasks(SbtTaskConfig.TASKS.getName())
+                .withStages(SbtTaskConfig.STAGES.getName());
+        final List<String> command = parser.build();
+
+        // then
+        assertEquals(Arrays.asList("clean", "test:compile", "it:compile", "core/it:compile"),
+                command.subList(1, command.size()));
+        assertEquals(command.subList(1, command.size()), parser.getTasksByStage().get(null));
+        assertEquals(Arrays.asList("it:test", "core/it:testOnly"),
+                parser.buildStages().get("integration").subList(2, 4));
+    }
+
+    private int countLimits(List<String> command) {
+        int limits = 0;
+        for (String argument : command) {
+            if (argument.contains("concurrentRestrictions")) {
+                limits++;
+            }
+        }
+        return limits;
+    }
+
+    private void addConfigProperty(Map<String, Object> config, String name, String value) {
+        config.put(name, singletonMap("value", value));
+    }
+}
@@ -19,9 +19,12 @@ import com.thoughtworks.go.plugin.api.task.JobConsoleLogger;
 import io.jmnarloch.cd.go.plugin.api.executor.ExecutionConfiguration;
 import io.jmnarloch.cd.go.plugin.api.executor.ExecutionContext;
 import io.jmnarloch.cd.go.plugin.api.executor.ExecutionResult;
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.HashMap;
@@ -32,7 +35,7 @@ import static java.lang.Boolean.FALSE;
 import static java.lang.Boolean.TRUE;
 import static java.util.Collections.singletonMap;
 import static org.junit.Assert.*;
-import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.*;
 
 /**
  * Tests the {@link SbtTaskExecutor} class.
@@ -73,6 +76,92 @@ public class SbtTaskExecutorTest {
         assertTrue(result.isSuccess());
     }
 
+    @Test
+    public void shouldBuildSbtProjectWithStages() throws Exception {
+
+        // given
+        final ExecutionContext executionContext = createExecutionContext();
+        final ExecutionConfiguration executionConfiguration = createExecutionConfig(
+                singletonMap(SbtTaskConfig.STAGES.getName(), "test: test\npackage: package"));
+        final JobConsoleLogger jobConsoleLogger = createConsoleLogger();
+
+        // when
+        final ExecutionResult result = instance.execute(executionContext, executionConfiguration, jobConsoleLogger);
+
+        // then
+        assertNotNull(result);
+        assertTrue(result.isSuccess());
+        verify(jobConsoleLogger).printLine(matches("Stage test finished with exit code 0 in \\d+ s"));
+        verify(jobConsoleLogger).printLine(matches("Stage package finished with exit code 0 in \\d+ s"));
+        verify(jobConsoleLogger, never()).printLine(startsWith("Build failure"));
+    }
+
+    @Test
+    public void shouldFailBuildWhenStageFails() throws Exception {
+
+        // given
+        final ExecutionContext executionContext = createExecutionContext();
+        final ExecutionConfiguration executionConfiguration = createExecutionConfig(
+                singletonMap(SbtTaskConfig.STAGES.getName(), "test: test\nbroken: nonExistingTask"));
+        final JobConsoleLogger jobConsoleLogger = createConsoleLogger();
+
+        // when
+        final ExecutionResult result = instance.execute(executionContext, executionConfiguration, jobConsoleLogger);
+
+        // then
+        assertNotNull(result);
+        assertFalse(result.isSuccess());
+        verify(jobConsoleLogger).printLine(matches("Stage test finished with exit code 0 in \\d+ s"));
+        verify(jobConsoleLogger).printLine(matches("Stage broken finished with exit code [1-9]\\d* in \\d+ s"));
+        verify(jobConsoleLogger).printLine("Build failure, failed stages: [broken]");
+    }
+
+    @Test
+    public void shouldWriteLogFile() throws Exception {
+
+        // given
+        final ExecutionContext executionContext = createExecutionContext();
+        final Path logs = Paths.get(executionContext.getWorkingDirectory(), "logs");
+        final Path logFile = logs.resolve("sbt.log.gz");
+        final ExecutionConfiguration executionConfiguration = createExecutionConfig(
+                singletonMap(SbtTaskConfig.LOG_FILE.getName(), "logs/sbt.log.gz"));
+        final JobConsoleLogger jobConsoleLogger = createConsoleLogger();
+
+        try {
+            // when
+            final ExecutionResult result = instance.execute(executionContext, executionConfiguration,
+                    jobConsoleLogger);
+
+            // then
+            assertNotNull(result);
+            assertTrue(result.isSuccess());
+            assertTrue(Files.size(logFile) > 0);
+            assertTrue(Files.size(SbtLogWriter.indexOf(logFile)) > 0);
+            verify(jobConsoleLogger, never()).printLine(contains("is in the target directory"));
+        } finally {
+            FileUtils.deleteDirectory(logs.toFile());
+        }
+    }
+
+    @Test
+    public void shouldWarnIfLogFileIsInTarget() throws Exception {
+
+        // given
+        final Path logFile = Files.createTempDirectory("sbt").resolve("target/sbt.log.gz");
+        final ExecutionContext executionContext = createExecutionContext();
+        final ExecutionConfiguration executionConfiguration = createExecutionConfig(
+                singletonMap(SbtTaskConfig.LOG_FILE.getName(), logFile.toString()));
+        final JobConsoleLogger jobConsoleLogger = createConsoleLogger();
+
+        // when
+        final ExecutionResult result = instance.execute(executionContext, executionConfiguration, jobConsoleLogger);
+
+        // then
+        assertNotNull(result);
+        assertTrue(result.isSuccess());
+        verify(jobConsoleLogger).printLine(startsWith("The log file " + logFile + " is in the target directory"));
+    }
+
     @SuppressWarnings("unchecked")
     private ExecutionContext createExecutionContext() {
         final Map<String, Object> config = new HashMap<>();
@@ -0,0 +1,191 @@
+/**
+ * Copyright (c) 2015 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jmnarloch.cd.go.plugin.sbt;
+
+import io.jmnarloch.cd.go.plugin.api.validation.ValidationErrors;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Collections.singletonMap;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the {@link SbtTaskValidator} class.
+ *
+ * @author Jakub Narloch
+ */
+public class SbtTaskValidatorTest {
+
+    /**
+     * Instance of the tested class.
+     */
+    private SbtTaskValidator instance;
+
+    /**
+     * The validation errors.
+     */
+    private ValidationErrors errors;
+
+    /**
+     * Sets up the tests environment.
+     *
+     * @throws Exception if any error occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+
+        instance = new SbtTaskValidator();
+        errors = mock(ValidationErrors.class);
+    }
+
+    @Test
+    public void shouldAcceptValidConfiguration() {
+
+        // given
+        final Map<String, Object> properties = createProperties(SbtTaskConfig.STAGES.getName(),
+                "test: test\npackage: package");
+
+        // when
+        instance.validate(properties, errors);
+
+        // then
+        verify(errors, never()).addError(anyString(), anyString());
+    }
+
+    @Test
+    public void shouldRejectMissingTasks() {
+
+        // given
+        final Map<String, Object> properties = new HashMap<>();
+        addProperty(properties, SbtTaskConfig.TASKS.getName(), " ");
+
+        // when
+        instance.validate(properties, errors);
+
+        // then
+        verify(errors).addError(eq(SbtTaskConfig.TASKS.getName()), anyString());
+    }
+
+    @Test
+    public void shouldAcceptSbtVersion() {
+
+        // given
+        final Map<String, Object> properties = createProperties(SbtTaskConfig.SBT_VERSION.getName(), " 1.0.0-RC2 ");
+
+        // when
+        instance.validate(properties, errors);
+
+        // then
+        verify(errors, never()).addError(anyString(), anyString());
+    }
+
+    @Test
+    public void shouldRejectInvalidSbtVersion() {
+
+        // given
+        final Map<String, Object> properties = createProperties(SbtTaskConfig.SBT_VERSION.getName(), "0.13");
+
+        // when
+        instance.validate(properties, errors);
+
+        // then
+        verify(errors).addError(eq(SbtTaskConfig.SBT_VERSION.getName()), anyString());
+    }
+
+    @Test
+    public void shouldRejectDuplicateStages() {
+
+        // given
+        final Map<String, Object> properties = createProperties(SbtTaskConfig.STAGES.getName(),
+                "test: test\ntest: it:test");
+
+        // when
+        instance.validate(properties, errors);
+
+        // then
+        verify(errors).addError(eq(SbtTaskConfig.STAGES.getName()), anyString());
+    }
+
+    @Test
+    public void shouldRejectDuplicateUnnamedStages() {
+
+        // given
+        final Map<String, Object> properties = createProperties(SbtTaskConfig.STAGES.getName(),
+                "doc\n  doc  ");
+
+        // when
+        instance.validate(properties, errors);
+
+        // then
+        verify(errors).addError(eq(SbtTaskConfig.STAGES.getName()), anyString());
+    }
+
+    @Test
+    public void shouldRejectLogFileInTarget() {
+
+        // given
+        final Map<String, Object> properties = createProperties(SbtTaskConfig.LOG_FILE.getName(),
+                "core/target/sbt.log.gz");
+
+        // when
+        instance.validate(properties, errors);
+
+        // then
+        verify(errors).addError(eq(SbtTaskConfig.LOG_FILE.getName()), anyString());
+    }
+
+    @Test
+    public void shouldRejectEventFileInTarget() {
+
+        // given
+        final Map<String, Object> properties = createProperties(SbtTaskConfig.EVENT_FILE.getName(),
+                "target/sbt-events.ndjson");
+
+        // when
+        instance.validate(properties, errors);
+
+        // then
+        verify(errors).addError(eq(SbtTaskConfig.EVENT_FILE.getName()), anyString());
+    }
+
+    @Test
+    public void shouldAcceptLogFileOutsideTarget() {
+
+        // given
+        final Map<String, Object> properties = createProperties(SbtTaskConfig.LOG_FILE.getName(),
+                "logs/target.log.gz");
+
+        // when
+        instance.validate(properties, errors);
+
+        // then
+        verify(errors, never()).addError(anyString(), anyString());
+    }
+
+    private Map<String, Object> createProperties(String name, String value) {
+        final Map<String, Object> properties = new HashMap<>();
+        addProperty(properties, SbtTaskConfig.TASKS.getName(), "clean compile");
+        addProperty(properties, name, value);
+        return properties;
+    }
+
+    private void addProperty(Map<String, Object> properties, String name, String value) {
+        properties.put(name, singletonMap("value", value));
+    }
+}